@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.LinuxPerfNormProfiler;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Where the time of a lookup goes once the table doesn't fit in the caches: HashMap chases table -> Node -> key,
+ * {@link FlatHashMap} scans arrays and reads the key once, {@link IntIntOpenHashMap} doesn't read anything else.
+ * <p>
+ * The Integer keys are allocated in order, then inserted and looked up in order or shuffled. In order, consecutive
+ * keys land in consecutive buckets and the prefetcher hides most misses; shuffled, nearly every lookup of a big table
+ * misses. IntIntOpenHashMap mixes its keys, so its accesses are random whatever the order.
+ * <p>
+ * The lookups are one per op so that the perfnorm counters (L1/LLC misses, branch misses) read per lookup, the
+ * inserts are one table build per op.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+public class CacheLocalityBench {
+
+    // fits in L2, in the LLC, in DRAM only
+    @Param({"24576", "196608", "3145728"})
+    public int insertCount;
+
+    @Param({"sequential", "shuffled"})
+    public String insertOrder;
+
+    // allocated in order, shared by the inserts and the lookups
+    private List<Integer> integers;
+    private Integer[] inserts;
+    private int[] intInserts;
+
+    private HashMap<Integer, Integer> hashMap;
+    private FlatHashMap<Integer, Integer> flatHashMap;
+    private IntIntOpenHashMap intMap;
+
+    @Setup
+    public void prepare_maps() {
+        integers = new ArrayList<>(insertCount);
+        for (int i = 0; i < insertCount; i++) {
+            integers.add(i);
+        }
+        inserts = order(integers, insertOrder, 1);
+        intInserts = unbox(inserts);
+
+        hashMap = new HashMap<>();
+        flatHashMap = new FlatHashMap<>();
+        intMap = new IntIntOpenHashMap();
+        for (int i = 0; i < insertCount; i++) {
+            hashMap.put(inserts[i], inserts[i]);
+            flatHashMap.put(inserts[i], inserts[i]);
+            intMap.put(intInserts[i], intInserts[i]);
+        }
+    }
+
+    private static Integer[] order(List<Integer> integers, String order, long seed) {
+        List<Integer> ordered = new ArrayList<>(integers);
+        switch (order) {
+            case "sequential":
+                break;
+            case "shuffled":
+                Collections.shuffle(ordered, new Random(KeyCorpusGenerator.DEFAULT_SEED + seed));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown order: " + order);
+        }
+        return ordered.toArray(new Integer[0]);
+    }
+
+    private static int[] unbox(Integer[] integers) {
+        int[] ints = new int[integers.length];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = integers[i];
+        }
+        return ints;
+    }
+
+    /**
+     * The keys of the lookups, in their own state so that the inserts don't run once per lookupOrder.
+     */
+    @State(Scope.Benchmark)
+    public static class Lookups {
+
+        @Param({"sequential", "shuffled"})
+        public String lookupOrder;
+
+        private Integer[] keys;
+        private int[] intKeys;
+        private int next;
+
+        @Setup
+        public void prepare_lookups(CacheLocalityBench bench) {
+            keys = order(bench.integers, lookupOrder, 2);
+            intKeys = unbox(keys);
+        }
+
+        int next() {
+            int i = next;
+            next = i + 1 == keys.length ? 0 : i + 1;
+            return i;
+        }
+    }
+
+    @Benchmark
+    public Integer hash_map_lookup(Lookups lookups) {
+        return hashMap.get(lookups.keys[lookups.next()]);
+    }
+
+    @Benchmark
+    public Integer flat_hash_map_lookup(Lookups lookups) {
+        return flatHashMap.get(lookups.keys[lookups.next()]);
+    }
+
+    @Benchmark
+    public int int_map_lookup(Lookups lookups) {
+        return intMap.get(lookups.intKeys[lookups.next()]);
+    }
+
+    @Benchmark
+    public void hash_map_insert(Blackhole blackhole) {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        for (Integer key : inserts) {
+            map.put(key, key);
+        }
+        blackhole.consume(map);
+    }
+
+    @Benchmark
+    public void flat_hash_map_insert(Blackhole blackhole) {
+        FlatHashMap<Integer, Integer> map = new FlatHashMap<>();
+        for (Integer key : inserts) {
+            map.put(key, key);
+        }
+        blackhole.consume(map);
+    }
+
+    @Benchmark
+    public void int_map_insert(Blackhole blackhole) {
+        IntIntOpenHashMap map = new IntIntOpenHashMap();
+        for (int key : intInserts) {
+            map.put(key, key);
+        }
+        blackhole.consume(map);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder opt = new OptionsBuilder()
+                .include(".*" + CacheLocalityBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .jvmArgs("-Xmx3g", "-Xms3g")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .threads(1)
+                .forks(1);
+
+        // the counters need perf and the rights to use it, without them the times are still worth having
+        List<String> perfErrors = new ArrayList<>();
+        if (new LinuxPerfNormProfiler().checkSupport(perfErrors)) {
+            opt.addProfiler(LinuxPerfNormProfiler.class);
+        } else {
+            System.out.println("perfnorm not available, running without hardware counters: " + perfErrors);
+        }
+
+        ResultsStore.run(opt.build());
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Caching the hashCode of a Person like String does, against recomputing it on each call.
+ * <p>
+ * All the variants compute the same hash as {@link HashCodeBuilderBench.PersonWithHashCodeBuilder2}, they only differ
+ * by when it is computed: on each call, lazily on the first call, in the constructor, or by whoever builds the
+ * Person. repeated_lookups hashes every key once per lookup, build_with_resizes hashes every key once per put, the
+ * resizes reuse the hash stored in the HashMap nodes. Both reuse the Persons of the trial, so lazy and eager only
+ * read their cached hash there; build_then_lookups makes new Persons on each call and pays the first hash too.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(1)
+@Fork(1)
+public class CachedHashCodeBench {
+
+    @Param({"uncached", "lazy", "eager", "precomputed"})
+    public String hashing;
+
+    @Param({"0", "10000", "300000"})
+    public int corpusSize = 0;
+
+    private List<Object> persons;
+    private HashSet<Object> set;
+    private String[] names;
+    private IntFunction<Object> newPerson;
+
+    @Setup
+    public void load_persons() {
+        persons = KeyCorpus.load(corpusSize, KeyCorpus.NO_FILE, constructor(hashing));
+        set = new HashSet<>(persons);
+        names = KeyCorpus.load(corpusSize, KeyCorpus.NO_FILE).toArray(new String[0]);
+        if ("precomputed".equals(hashing)) {
+            // the hash comes with the data, it is not computed by build_then_lookups
+            int[] hashes = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                hashes[i] = hash(names[i]);
+            }
+            newPerson = i -> new PersonWithPrecomputedHashCode(copy(names[i]), hashes[i]);
+        } else {
+            Function<String, Object> constructor = constructor(hashing);
+            newPerson = i -> constructor.apply(copy(names[i]));
+        }
+    }
+
+    /**
+     * Lookups per key in build_then_lookups, a separate state so the other benchmarks do not run once per value.
+     */
+    @State(Scope.Benchmark)
+    public static class Lookups {
+
+        @Param({"1", "10"})
+        public int lookupsPerKey;
+    }
+
+    // like a name read from a file: a new String, its hash is not cached yet
+    private static String copy(String name) {
+        return new String(name.toCharArray());
+    }
+
+    static Function<String, Object> constructor(String hashing) {
+        switch (hashing) {
+            case "uncached":
+                return PersonWithUncachedHashCode::new;
+            case "lazy":
+                return PersonWithLazyHashCode::new;
+            case "eager":
+                return PersonWithEagerHashCode::new;
+            case "precomputed":
+                // stands for a hash coming with the data, e.g. MappedKeyCorpus.hash()
+                return name -> new PersonWithPrecomputedHashCode(name, hash(name));
+            default:
+                throw new IllegalArgumentException("unknown hashing: " + hashing);
+        }
+    }
+
+    static int hash(String name) {
+        return new HashCodeBuilder().append(name).build();
+    }
+
+    @Benchmark
+    public int repeated_lookups() {
+        int found = 0;
+        for (Object person : persons) {
+            if (set.contains(person)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int build_then_lookups(Lookups lookups) {
+        Object[] fresh = new Object[names.length];
+        for (int i = 0; i < fresh.length; i++) {
+            fresh[i] = newPerson.apply(i);
+        }
+        HashSet<Object> set = new HashSet<>();
+        for (Object person : fresh) {
+            set.add(person);
+        }
+        int found = 0;
+        for (int n = 0; n < lookups.lookupsPerKey; n++) {
+            for (Object person : fresh) {
+                if (set.contains(person)) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public void build_with_resizes(Blackhole blackhole) {
+        HashSet<Object> set = new HashSet<>();
+        for (Object person : persons) {
+            set.add(person);
+        }
+        blackhole.consume(set);
+    }
+
+    static class PersonWithUncachedHashCode {
+
+        private final String name;
+
+        public PersonWithUncachedHashCode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithUncachedHashCode person = (PersonWithUncachedHashCode) o;
+            return !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(name);
+        }
+    }
+
+    /**
+     * Like String: computed on the first call, 0 means not computed yet.
+     */
+    static class PersonWithLazyHashCode {
+
+        private final String name;
+        private int hash;
+
+        public PersonWithLazyHashCode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithLazyHashCode person = (PersonWithLazyHashCode) o;
+            return !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = hash;
+            if (h == 0) {
+                // racy but safe, like String: every thread computes the same value
+                h = hash(name);
+                hash = h;
+            }
+            return h;
+        }
+    }
+
+    static class PersonWithEagerHashCode {
+
+        private final String name;
+        private final int hash;
+
+        public PersonWithEagerHashCode(String name) {
+            this.name = name;
+            this.hash = hash(name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithEagerHashCode person = (PersonWithEagerHashCode) o;
+            return hash == person.hash && !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static class PersonWithPrecomputedHashCode {
+
+        private final String name;
+        private final int hash;
+
+        /**
+         * @param hash must be hash(name), it is not checked
+         */
+        public PersonWithPrecomputedHashCode(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithPrecomputedHashCode person = (PersonWithPrecomputedHashCode) o;
+            return hash == person.hash && !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * What the cached hash costs in memory: the layout of each variant and the retained heap of a set of them.
+     */
+    static void printObjectSizes(int corpusSize) {
+        Class<?>[] types = {PersonWithUncachedHashCode.class, PersonWithLazyHashCode.class,
+                PersonWithEagerHashCode.class, PersonWithPrecomputedHashCode.class};
+        String[] hashings = {"uncached", "lazy", "eager", "precomputed"};
+        for (Class<?> type : types) {
+            System.out.println(ObjectLayout.layout(type));
+        }
+        List<String> names = KeyCorpus.load(corpusSize, KeyCorpus.NO_FILE);
+        System.out.println(String.format("%-12s %15s %20s", "hashing", "instance bytes", "set bytes per entry"));
+        for (int i = 0; i < types.length; i++) {
+            Function<String, Object> constructor = constructor(hashings[i]);
+            double perEntry = HeapFootprint.bytesPerEntry(() -> {
+                HashSet<Object> set = new HashSet<>();
+                for (String name : names) {
+                    set.add(constructor.apply(name));
+                }
+                return set;
+            }, names.size());
+            System.out.println(String.format("%-12s %15d %20.1f", hashings[i], ObjectLayout.instanceSize(types[i]), perEntry));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + CachedHashCodeBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .jvmArgs("-Xmx2g", "-Xms2g")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+        printObjectSizes(KeyCorpusGenerator.LLC_SIZED);
+    }
+}
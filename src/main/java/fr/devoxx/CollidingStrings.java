@@ -0,0 +1,68 @@
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Attack corpus for String.hashCode(): "Aa" and "BB" have the same hashCode, and so do all the Strings made of
+ * k of these blocks, since 31^2 * h + hash(block) only depends on the blocks hash. That's 2^k distinct Strings
+ * of 2k chars sharing a single hashCode.
+ */
+public class CollidingStrings {
+
+    static final String[] BLOCKS = {"Aa", "BB"};
+
+    // the smallest bin HashMap turns into a tree, one more than TREEIFY_THRESHOLD
+    static final int TREE_BIN_SIZE = HashQualityAnalyzer.TREEIFY_THRESHOLD + 1;
+
+    /**
+     * @return n distinct Strings with the same hashCode, all of the same length
+     */
+    public static List<String> generate(int n) {
+        int blocks = blocksFor(n);
+        List<String> keys = new ArrayList<>(n);
+        char[] chars = new char[blocks * 2];
+        for (int i = 0; i < n; i++) {
+            // the bits of i choose the blocks
+            for (int block = 0; block < blocks; block++) {
+                String s = BLOCKS[(i >>> block) & 1];
+                chars[block * 2] = s.charAt(0);
+                chars[block * 2 + 1] = s.charAt(1);
+            }
+            keys.add(new String(chars));
+        }
+        return keys;
+    }
+
+    /**
+     * The baseline: n random Strings of the same length and alphabet as {@link #generate(int)}, with unrelated hashCodes.
+     */
+    public static List<String> random(int n, long seed) {
+        int length = blocksFor(n) * 2;
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> keys = new ArrayList<>(n);
+        char[] chars = new char[length];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < length; j++) {
+                chars[j] = "AaB".charAt(random.nextInt(3));
+            }
+            keys.add(new String(chars));
+        }
+        return keys;
+    }
+
+    static int blocksFor(int n) {
+        int blocks = 1;
+        while (blocks < 31 && (1 << blocks) < n) {
+            blocks++;
+        }
+        return blocks;
+    }
+
+    public static void main(String[] args) {
+        for (String key : generate(args.length == 0 ? TREE_BIN_SIZE : Integer.parseInt(args[0]))) {
+            System.out.println(key + " " + key.hashCode());
+        }
+    }
+}
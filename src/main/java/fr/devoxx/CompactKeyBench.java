@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Smaller keys than a Person wrapping a String, which costs the Person, the String and its char[] (2 bytes per char
+ * on Java 8):
+ * <ul>
+ *     <li>string: {@link HashCodeBuilderBench.Person}, as in simpleHashCode</li>
+ *     <li>latin1: the name as a Latin-1 byte[] with its hash computed once, same value as String.hashCode()</li>
+ *     <li>dictionary_ids: the first name and the rest of the name as ids of a {@link NameDictionary}, each distinct
+ *     part is stored once</li>
+ * </ul>
+ * main() prints the retained heap per key of each representation, the dictionary included, on names.txt and on
+ * generated corpora with few and many repeated names.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Fork(1)
+public class CompactKeyBench {
+
+    @Param({"string", "latin1", "dictionary_ids"})
+    public String representation;
+
+    /**
+     * 0 for names.txt, or the number of generated keys, see {@link KeyCorpusGenerator}
+     */
+    @Param({"0", "300000"})
+    public int corpusSize = 0;
+
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    private List<Object> keys;
+    // equal to the keys, built from copies of the names
+    private List<Object> lookups;
+    private HashSet<Object> set;
+
+    @Setup
+    public void load_keys() {
+        Function<String, Object> key = key(representation, new NameDictionary());
+        List<String> names = KeyCorpus.load(corpusSize, corpusFile);
+        keys = new ArrayList<>(names.size());
+        lookups = new ArrayList<>(names.size());
+        for (String name : names) {
+            keys.add(key.apply(name));
+            lookups.add(key.apply(new String(name)));
+        }
+        set = new HashSet<>(keys);
+    }
+
+    static Function<String, Object> key(String representation, NameDictionary dictionary) {
+        switch (representation) {
+            case "string":
+                return HashCodeBuilderBench.Person::new;
+            case "latin1":
+                return Latin1Person::new;
+            case "dictionary_ids":
+                return name -> new PersonWithNameIds(dictionary, name);
+            default:
+                throw new IllegalArgumentException("unknown representation: " + representation);
+        }
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) {
+        HashSet<Object> set = new HashSet<>();
+        for (Object key : keys) {
+            set.add(key);
+        }
+        blackhole.consume(set);
+    }
+
+    @Benchmark
+    public int lookups() {
+        int found = 0;
+        for (Object key : lookups) {
+            if (set.contains(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    static class Latin1Person {
+
+        private final byte[] name;
+        private final int hash;
+
+        public Latin1Person(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) > 0xFF) {
+                    throw new IllegalArgumentException("not a Latin-1 name: " + name);
+                }
+            }
+            this.name = name.getBytes(StandardCharsets.ISO_8859_1);
+            this.hash = name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Latin1Person person = (Latin1Person) o;
+            return hash == person.hash && Arrays.equals(name, person.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return new String(name, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    static class PersonWithNameIds {
+
+        private final NameDictionary dictionary;
+        private final int firstNameId;
+        private final int lastNameId;
+
+        public PersonWithNameIds(NameDictionary dictionary, String name) {
+            int space = name.indexOf(' ');
+            this.dictionary = dictionary;
+            this.firstNameId = dictionary.id(space < 0 ? name : name.substring(0, space));
+            this.lastNameId = dictionary.id(space < 0 ? "" : name.substring(space + 1));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithNameIds person = (PersonWithNameIds) o;
+            // ids only compare within the same dictionary
+            return firstNameId == person.firstNameId && lastNameId == person.lastNameId && dictionary == person.dictionary;
+        }
+
+        @Override
+        public int hashCode() {
+            // the ids are dense small ints, the first one is mixed so that the pairs don't collide
+            return IntIntOpenHashMap.mix(firstNameId) * 31 + lastNameId;
+        }
+
+        @Override
+        public String toString() {
+            String last = dictionary.name(lastNameId);
+            return last.isEmpty() ? dictionary.name(firstNameId) : dictionary.name(firstNameId) + ' ' + last;
+        }
+    }
+
+    /**
+     * Bytes per key of the keys alone and of the keys in a HashSet. The corpus is loaded by each measure, its Strings
+     * are garbage unless the keys keep them.
+     */
+    static void printRetainedHeap(String corpusName, Supplier<List<String>> corpus) {
+        int size = corpus.get().size();
+        for (String representation : new String[]{"string", "latin1", "dictionary_ids"}) {
+            double keysOnly = HeapFootprint.bytesPerEntry(() -> keys(representation, corpus.get()), size);
+            double inSet = HeapFootprint.bytesPerEntry(() -> new HashSet<>(keys(representation, corpus.get())), size);
+            System.out.println(String.format("%-24s %-16s %10d %14.1f %14.1f", corpusName, representation, size, keysOnly, inSet));
+        }
+    }
+
+    private static List<Object> keys(String representation, List<String> names) {
+        Function<String, Object> key = key(representation, new NameDictionary());
+        List<Object> keys = new ArrayList<>(names.size());
+        for (String name : names) {
+            keys.add(key.apply(name));
+        }
+        return keys;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + CompactKeyBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .jvmArgs("-Xmx2g", "-Xms2g")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+        System.out.println(String.format("%-24s %-16s %10s %14s %14s", "corpus", "representation", "keys", "keys B/key", "set B/key"));
+        printRetainedHeap("names.txt", KeyCorpus::names);
+        printRetainedHeap("generated", () -> new KeyCorpusGenerator().generate(KeyCorpusGenerator.LLC_SIZED));
+        // half of the keys are repeats, the first names are skewed
+        printRetainedHeap("generated, 50% repeats", () -> new KeyCorpusGenerator(KeyCorpusGenerator.DEFAULT_SEED, 0.5, 1.5)
+                .generate(KeyCorpusGenerator.LLC_SIZED));
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.IterationType;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.util.Statistics;
+
+/**
+ * {@link PutLatencyBench} for a ConcurrentHashMap filled by several threads, where the writers that hit a resize
+ * help to transfer the bins to the new table.
+ * <p>
+ * Each invocation is one put of the next key of the fill, the threads share the map, and the thread that takes
+ * the key after the last one starts a new map. concurrent_put gives the throughput of the fill. The sample time
+ * mode only times some of the puts and misses most of the few that resize, so timed_put times every put and, at
+ * the end of the trial, the fork prints two latency histograms: the puts that ran during a transfer (the table or
+ * nextTable of the map, read by reflection, changed or was set) and the others. On JDK 16+ timed_put needs
+ * --add-opens java.base/java.util.concurrent=ALL-UNNAMED, which main() adds. Unlike HashMap, ConcurrentHashMap
+ * resizes when the count reaches 0.75 * capacity: 24576 keys already resize a 32768 bins table, the values are kept
+ * the same as in {@link HashMapResize} to compare both maps. pre_sized allocates its whole table on the first put of
+ * each fill.
+ * main() runs it from 1 thread to the number of cores.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ConcurrentResizeBench {
+
+    // same values as in HashMapResize
+    @Param({"24576", "24577", "196608", "196609", "3145728", "3145729"})
+    public int insertCount = 0;
+
+    @Param({"pre_sized", "auto_grown"})
+    public String sizing;
+
+    // both volatile, Field.get() reads them with the volatile semantics, null when java.util.concurrent isn't open
+    private static final Field TABLE = field("table");
+    private static final Field NEXT_TABLE = field("nextTable");
+
+    // --add-opens is rejected by JDK 8
+    static final String[] JVM_ARGS = !System.getProperty("java.specification.version").startsWith("1.")
+            ? new String[]{"-Xmx4g", "-Xms4g", "--add-opens", "java.base/java.util.concurrent=ALL-UNNAMED"}
+            : new String[]{"-Xmx4g", "-Xms4g"};
+
+    private Integer[] keys;
+    private volatile Fill fill;
+
+    private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+    private volatile boolean measuring;
+
+    static final class Fill {
+
+        final ConcurrentHashMap<Integer, Integer> map;
+        final AtomicInteger next = new AtomicInteger();
+
+        Fill(ConcurrentHashMap<Integer, Integer> map) {
+            this.map = map;
+        }
+    }
+
+    @Setup
+    public void prepare_boxed_ints() {
+        keys = new Integer[insertCount];
+        for (int i = 0; i < insertCount; i++) {
+            keys[i] = i;
+        }
+        fill = newFill();
+    }
+
+    private Fill newFill() {
+        switch (sizing) {
+            case "pre_sized":
+                // the constructor of ConcurrentHashMap takes the expected number of entries
+                return new Fill(new ConcurrentHashMap<>(insertCount));
+            case "auto_grown":
+                return new Fill(new ConcurrentHashMap<>());
+            default:
+                throw new IllegalArgumentException("unknown sizing: " + sizing);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void start_iteration(IterationParams params) {
+        measuring = params.getType() == IterationType.MEASUREMENT;
+    }
+
+    @Benchmark
+    public Integer concurrent_put() {
+        while (true) {
+            Fill current = fill;
+            int i = current.next.getAndIncrement();
+            if (i < insertCount) {
+                return current.map.put(keys[i], keys[i]);
+            }
+            if (i == insertCount) {
+                fill = newFill();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer timed_put(Recorder recorder) {
+        if (!recorder.registered) {
+            if (TABLE == null || NEXT_TABLE == null) {
+                throw new IllegalStateException("run with --add-opens java.base/java.util.concurrent=ALL-UNNAMED");
+            }
+            recorders.add(recorder);
+            recorder.registered = true;
+        }
+        while (true) {
+            Fill current = fill;
+            int i = current.next.getAndIncrement();
+            if (i < insertCount) {
+                ConcurrentHashMap<Integer, Integer> map = current.map;
+                Object table = read(TABLE, map);
+                Object nextTable = read(NEXT_TABLE, map);
+                long start = System.nanoTime();
+                Integer previous = map.put(keys[i], keys[i]);
+                long nanos = System.nanoTime() - start;
+                if (measuring) {
+                    boolean resizing = nextTable != null || read(NEXT_TABLE, map) != null || table != read(TABLE, map);
+                    (resizing ? recorder.resizing : recorder.other).record(nanos);
+                }
+                return previous;
+            }
+            if (i == insertCount) {
+                fill = newFill();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Recorder {
+
+        final LatencyHistogram resizing = new LatencyHistogram();
+        final LatencyHistogram other = new LatencyHistogram();
+        boolean registered;
+    }
+
+    @TearDown
+    public void print_histograms(BenchmarkParams params) {
+        if (!params.getBenchmark().endsWith(".timed_put")) {
+            return;
+        }
+        LatencyHistogram resizing = new LatencyHistogram();
+        LatencyHistogram other = new LatencyHistogram();
+        for (Recorder recorder : recorders) {
+            resizing.add(recorder.resizing);
+            other.add(recorder.other);
+        }
+        System.out.println();
+        System.out.println("put latency, " + params.getThreads() + " threads, " + sizing + ", insertCount " + insertCount);
+        System.out.println(LatencyHistogram.header());
+        System.out.println(resizing.summary("during a resize"));
+        System.out.println(other.summary("other puts"));
+        System.out.println();
+        System.out.println(resizing.histogram("during a resize"));
+    }
+
+    /**
+     * Log-linear histogram of nanoseconds: 4 buckets per power of 2, i.e. 19% precision at most.
+     */
+    static final class LatencyHistogram {
+
+        private static final int SUB_BUCKETS = 4;
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+
+        static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) Math.max(0, nanos);
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(nanos);
+            return (msb - 1) * SUB_BUCKETS + (int) ((nanos >>> (msb - 2)) & (SUB_BUCKETS - 1));
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (bucket / SUB_BUCKETS - 1);
+        }
+
+        void record(long nanos) {
+            counts[bucket(nanos)]++;
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+        }
+
+        long count() {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            return count;
+        }
+
+        // lower bound of the bucket of the percentile
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(count() * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return lowerBound(i);
+                }
+            }
+            return 0;
+        }
+
+        static String header() {
+            return String.format("%-16s %12s %10s %10s %10s %10s %10s", "", "puts", "p50 ns", "p99 ns", "p99.9 ns", "p99.99 ns", "max ns");
+        }
+
+        String summary(String name) {
+            return String.format("%-16s %12d %10d %10d %10d %10d %10d", name, count(), percentile(50), percentile(99),
+                    percentile(99.9), percentile(99.99), percentile(100));
+        }
+
+        String histogram(String name) {
+            StringBuilder sb = new StringBuilder(name).append(", ns:");
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    sb.append(String.format("%n  [%12d, %12d[ %10d", lowerBound(i), lowerBound(i + 1), counts[i]));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private static Field field(String name) {
+        try {
+            Field field = ConcurrentHashMap.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        } catch (RuntimeException e) {
+            // InaccessibleObjectException, JDK 9+ only
+            if (e.getClass().getName().equals("java.lang.reflect.InaccessibleObjectException")) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static Object read(Field field, ConcurrentHashMap<?, ?> map) {
+        try {
+            return field.get(map);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void printSummary(Collection<RunResult> results) {
+        System.out.println();
+        System.out.println(String.format("%-8s %-11s %12s %12s %10s %10s %10s %10s %10s",
+                "threads", "sizing", "insertCount", "ops/us", "p50 us", "p99 us", "p99.9 us", "p99.99 us", "max us"));
+        for (RunResult throughput : results) {
+            BenchmarkParams params = throughput.getParams();
+            if (params.getMode() != Mode.Throughput) {
+                continue;
+            }
+            for (RunResult sample : results) {
+                BenchmarkParams sampleParams = sample.getParams();
+                if (sampleParams.getMode() == Mode.SampleTime
+                        && sampleParams.getBenchmark().equals(params.getBenchmark())
+                        && sampleParams.getThreads() == params.getThreads()
+                        && sampleParams.getParam("sizing").equals(params.getParam("sizing"))
+                        && sampleParams.getParam("insertCount").equals(params.getParam("insertCount"))) {
+                    Statistics latency = sample.getPrimaryResult().getStatistics();
+                    System.out.println(String.format("%-8d %-11s %12s %12.2f %10.3f %10.3f %10.3f %10.3f %10.3f",
+                            params.getThreads(), params.getParam("sizing"), params.getParam("insertCount"),
+                            throughput.getPrimaryResult().getScore(), latency.getPercentile(50), latency.getPercentile(99),
+                            latency.getPercentile(99.9), latency.getPercentile(99.99), latency.getMax()));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        List<RunResult> results = new ArrayList<>();
+        for (int threads : ConcurrentSetBench.threadCounts()) {
+            Options opt = new OptionsBuilder()
+                    .include(".*" + ConcurrentResizeBench.class.getSimpleName() + ".concurrent_put")
+                    .shouldDoGC(true)
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .warmupTime(TimeValue.seconds(5))
+                    .measurementTime(TimeValue.seconds(5))
+                    .jvmArgs(JVM_ARGS)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .threads(threads)
+                    .forks(1)
+                    .build();
+
+            results.addAll(ResultsStore.run(opt));
+
+            // every put timed, the histograms are printed by the forks
+            ResultsStore.run(new OptionsBuilder()
+                    .parent(opt)
+                    .include(".*" + ConcurrentResizeBench.class.getSimpleName() + ".timed_put")
+                    .exclude(".*" + ConcurrentResizeBench.class.getSimpleName() + ".concurrent_put")
+                    .mode(Mode.Throughput)
+                    .build());
+        }
+        printSummary(results);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Concurrent sets of {@link HashCodeComplexity.Person} shared by all the threads of a group.
+ * <p>
+ * The set starts half full, writers toggle the persons (add if absent, remove if present) so the size stays stable,
+ * readers call contains(). charsToHash = 0 puts every person in the same bin / stripe / probe sequence.
+ * main() runs every group from 1 thread to the number of cores.
+ */
+@State(Scope.Group)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ConcurrentSetBench {
+
+    private static final List<HashCodeComplexity.Person> PERSONS = KeyCorpus.names(HashCodeComplexity.Person::new);
+
+    @Param({"concurrent_hash_map", "striped", "lock_free"})
+    public String setType;
+
+    @Param({"0", "6"})
+    public int charsToHash;
+
+    private Set<HashCodeComplexity.Person> set;
+
+    @Setup
+    public void fill_half() {
+        HashCodeComplexity.charsToHash = charsToHash;
+        set = newSet(setType, PERSONS.size());
+        for (int i = 0; i < PERSONS.size(); i += 2) {
+            set.add(PERSONS.get(i));
+        }
+    }
+
+    static <T> Set<T> newSet(String setType, int expectedSize) {
+        switch (setType) {
+            case "concurrent_hash_map":
+                return ConcurrentHashMap.newKeySet(expectedSize);
+            case "striped":
+                return new StripedHashSet<>(StripedHashSet.DEFAULT_STRIPES, expectedSize);
+            case "lock_free":
+                return new LockFreeHashSet<>(expectedSize);
+            default:
+                throw new IllegalArgumentException("unknown set type: " + setType);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index = ThreadLocalRandom.current().nextInt(PERSONS.size());
+
+        HashCodeComplexity.Person next() {
+            if (++index == PERSONS.size()) {
+                index = 0;
+            }
+            return PERSONS.get(index);
+        }
+    }
+
+    private boolean toggle(Cursor cursor) {
+        HashCodeComplexity.Person person = cursor.next();
+        return set.add(person) || set.remove(person);
+    }
+
+    @Benchmark
+    @Group("write_only")
+    @GroupThreads(1)
+    public boolean write_only_writer(Cursor cursor) {
+        return toggle(cursor);
+    }
+
+    @Benchmark
+    @Group("read_mostly")
+    @GroupThreads(3)
+    public boolean read_mostly_reader(Cursor cursor) {
+        return set.contains(cursor.next());
+    }
+
+    @Benchmark
+    @Group("read_mostly")
+    @GroupThreads(1)
+    public boolean read_mostly_writer(Cursor cursor) {
+        return toggle(cursor);
+    }
+
+    @Benchmark
+    @Group("read_write")
+    @GroupThreads(1)
+    public boolean read_write_reader(Cursor cursor) {
+        return set.contains(cursor.next());
+    }
+
+    @Benchmark
+    @Group("read_write")
+    @GroupThreads(1)
+    public boolean read_write_writer(Cursor cursor) {
+        return toggle(cursor);
+    }
+
+    static List<Integer> threadCounts() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads <<= 1) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        return counts;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : threadCounts()) {
+            // one group shares the set, split in readers and writers, with at least one of each
+            int readers = Math.max(1, threads * 3 / 4);
+            int[][] groups = {{threads}, {readers, Math.max(1, threads - readers)}, {Math.max(1, threads / 2), Math.max(1, threads - threads / 2)}};
+            String[] names = {"write_only", "read_mostly", "read_write"};
+            for (int i = 0; i < names.length; i++) {
+                Options opt = new OptionsBuilder()
+                        .include(".*" + ConcurrentSetBench.class.getSimpleName() + "." + names[i] + ".*")
+                        .shouldDoGC(true)
+                        .warmupIterations(5)
+                        .measurementIterations(5)
+                        .warmupTime(TimeValue.seconds(5))
+                        .measurementTime(TimeValue.seconds(5))
+                        .mode(Mode.Throughput)
+                        .timeUnit(TimeUnit.MICROSECONDS)
+                        .threadGroups(groups[i])
+                        .forks(1)
+                        .build();
+
+                ResultsStore.run(opt);
+            }
+        }
+    }
+}
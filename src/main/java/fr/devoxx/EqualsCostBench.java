@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * The cost of equals() when it actually runs: all the names come from {@link CollidingStrings}, so every Person
+ * variant of {@link LookupBench#person(String)} puts them in a single bin, and each lookup compares the key with
+ * the other keys of that bin. The bin is a list up to 8 keys. The 9th key turns it into a tree only when the table
+ * has at least 64 bins, a smaller table is resized instead. The Persons are not Comparable, so the tree is searched
+ * like a list too.
+ * <p>
+ * Each hashCode variant comes with its equals counterpart: hash_code_builder with equals_builder19,
+ * hash_code_builder2 with equals_builder, reflection with reflection_equals, generated with
+ * generated_reflection_equals.
+ */
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EqualsCostBench {
+
+    @Param({"simple", "hash_code_builder", "equals_builder19", "hash_code_builder2", "equals_builder", "reflection",
+            "reflection_equals", "generated", "generated_reflection_equals"})
+    public String variant;
+
+    @Param({"8", "64", "512"})
+    public int keyCount;
+
+    private HashSet<Object> set;
+    // copies of the keys, so that equals() can't stop at ==
+    private List<Object> lookups;
+
+    @Setup
+    public void prepare_colliding_set() {
+        Function<String, Object> person = LookupBench.person(variant);
+        List<String> names = CollidingStrings.generate(keyCount);
+        set = new HashSet<>();
+        lookups = new ArrayList<>(keyCount);
+        for (String name : names) {
+            set.add(person.apply(name));
+            lookups.add(person.apply(new String(name)));
+        }
+        if (set.size() != keyCount) {
+            throw new IllegalStateException(variant + ": " + set.size() + " distinct keys instead of " + keyCount);
+        }
+    }
+
+    @Benchmark
+    public int colliding_lookups() {
+        int found = 0;
+        for (Object key : lookups) {
+            if (set.contains(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + EqualsCostBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Does escape analysis remove the new HashCodeBuilder() / new EqualsBuilder() of the Person variants?
+ * <p>
+ * A single hashCode() or equals() per operation, so that B/op is the allocation of the call itself: 0 when the
+ * builder is scalar replaced. main() runs it on each JDK of -Djdks (java homes, comma separated, the running one by
+ * default), with C2 and with Graal when the JDK has it (11 to 16 with -XX:+UseJVMCICompiler), escape analysis on
+ * and off, and prints for each call whether the allocation was eliminated and the time it saves.
+ */
+@Warmup(time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EscapeAnalysisBench {
+
+    // below that the call doesn't allocate, the rest is noise from the JMH threads
+    static final double ALLOCATION_THRESHOLD = 1;
+
+    @Param({"simple", "hash_code_builder", "hash_code_builder2", "equals_builder"})
+    public String variant;
+
+    private Object[] persons;
+    // equal to persons, with copies of the names so that neither equals() can stop at ==
+    private Object[] copies;
+    private int next;
+
+    @Setup
+    public void create_persons() {
+        Function<String, Object> person = LookupBench.person(variant);
+        List<String> names = KeyCorpus.names();
+        persons = names.stream().map(person).toArray();
+        copies = names.stream().map(String::new).map(person).toArray();
+    }
+
+    @Benchmark
+    public int hash_code() {
+        int i = next;
+        next = i + 1 == persons.length ? 0 : i + 1;
+        return persons[i].hashCode();
+    }
+
+    @Benchmark
+    public boolean equals() {
+        int i = next;
+        next = i + 1 == persons.length ? 0 : i + 1;
+        return persons[i].equals(copies[i]);
+    }
+
+    enum Compiler {
+        C2(new String[]{"-XX:+DoEscapeAnalysis"}, new String[]{"-XX:-DoEscapeAnalysis"}),
+        // Graal has its own partial escape analysis
+        GRAAL(new String[]{"-XX:+UnlockExperimentalVMOptions", "-XX:+UseJVMCICompiler"},
+                new String[]{"-XX:+UnlockExperimentalVMOptions", "-XX:+UseJVMCICompiler", "-Dgraal.PartialEscapeAnalysis=false"});
+
+        final String[] escapeAnalysisOn;
+        final String[] escapeAnalysisOff;
+
+        Compiler(String[] escapeAnalysisOn, String[] escapeAnalysisOff) {
+            this.escapeAnalysisOn = escapeAnalysisOn;
+            this.escapeAnalysisOff = escapeAnalysisOff;
+        }
+
+        boolean isSupported(String java) {
+            // the JVMCI compiler is loaded lazily, EagerJVMCI makes it fail at startup when it's missing
+            return this == C2 || JavaCommand.run(java, "-XX:+UnlockExperimentalVMOptions", "-XX:+UseJVMCICompiler", "-XX:+EagerJVMCI",
+                    "-Dgraal.ShowConfiguration=info", "-version").contains("Using Graal compiler configuration");
+        }
+    }
+
+    static List<String> javas() {
+        String jdks = System.getProperty("jdks");
+        List<String> homes = jdks == null ? Arrays.asList(System.getProperty("java.home")) : Arrays.asList(jdks.split(","));
+        List<String> javas = new ArrayList<>();
+        for (String home : homes) {
+            javas.add(Paths.get(home.trim(), "bin", "java").toString());
+        }
+        return javas;
+    }
+
+    /**
+     * One call on one JVM, with escape analysis on and off.
+     */
+    static class Measure {
+
+        final String call;
+        Result<?> on;
+        Result<?> off;
+        double bytesOn = Double.NaN;
+        double bytesOff = Double.NaN;
+
+        Measure(String call) {
+            this.call = call;
+        }
+
+        void add(RunResult result, boolean escapeAnalysis) {
+            Result<?> alloc = result.getSecondaryResults().get("@alloc.rate");
+            double bytes = alloc == null ? Double.NaN : GcReport.bytesPerOp(alloc.getScore(), result);
+            if (escapeAnalysis) {
+                on = result.getPrimaryResult();
+                bytesOn = bytes;
+            } else {
+                off = result.getPrimaryResult();
+                bytesOff = bytes;
+            }
+        }
+
+        String verdict() {
+            if (bytesOff < ALLOCATION_THRESHOLD) {
+                return "nothing to eliminate";
+            }
+            if (bytesOn < ALLOCATION_THRESHOLD) {
+                return "eliminated";
+            }
+            // HashCodeBuilder.build() boxes the hash, the builder can go and the Integer stay
+            return bytesOn < bytesOff - ALLOCATION_THRESHOLD ? "partly eliminated" : "not eliminated";
+        }
+    }
+
+    static void printReport(String jvm, Collection<Measure> measures) {
+        System.out.println();
+        System.out.println(jvm);
+        System.out.println(String.format("%-40s %10s %10s %10s %10s %10s  %s",
+                "call", "EA ns/op", "no EA", "saved", "EA B/op", "no EA", "allocation"));
+        for (Measure measure : measures) {
+            if (measure.on == null || measure.off == null) {
+                continue;
+            }
+            System.out.println(String.format("%-40s %10.2f %10.2f %9.0f%% %10.1f %10.1f  %s",
+                    measure.call, measure.on.getScore(), measure.off.getScore(),
+                    100 * (measure.off.getScore() - measure.on.getScore()) / measure.off.getScore(),
+                    measure.bytesOn, measure.bytesOff, measure.verdict()));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + EscapeAnalysisBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementTime(TimeValue.seconds(1))
+                .jvmArgs("-Xmx128m", "-Xms128m")
+                .addProfiler(GcAllocationProfiler.class)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        Map<String, Collection<Measure>> reports = new LinkedHashMap<>();
+        for (String java : javas()) {
+            String version = JavaCommand.version(java);
+            for (Compiler compiler : Compiler.values()) {
+                String jvm = "JDK " + version + " " + compiler;
+                if (!compiler.isSupported(java)) {
+                    System.out.println(jvm + " not available, skipped");
+                    continue;
+                }
+                Map<String, Measure> measures = new LinkedHashMap<>();
+                for (boolean escapeAnalysis : new boolean[]{true, false}) {
+                    Options run = new OptionsBuilder()
+                            .parent(opt)
+                            .jvm(java)
+                            .jvmArgsAppend(escapeAnalysis ? compiler.escapeAnalysisOn : compiler.escapeAnalysisOff)
+                            .build();
+                    for (RunResult result : ResultsStore.run(run)) {
+                        String call = result.getParams().getParam("variant") + "." + result.getParams().getBenchmark().replaceFirst(".*\\.", "");
+                        measures.computeIfAbsent(call, Measure::new).add(result, escapeAnalysis);
+                    }
+                }
+                reports.put(jvm, measures.values());
+            }
+        }
+        for (Map.Entry<String, Collection<Measure>> report : reports.entrySet()) {
+            printReport(report.getKey(), report.getValue());
+        }
+    }
+}
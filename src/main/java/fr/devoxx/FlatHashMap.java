@@ -0,0 +1,142 @@
+package fr.devoxx;
+
+import java.util.Arrays;
+
+/**
+ * Object map laid out as a structure of arrays: keys[], hashes[] and values[], linear probing, no node per entry.
+ * <p>
+ * A HashMap lookup reads the table, then the Node, then the key to compare it, three cache lines in different places.
+ * Here the probe scans the hashes[] array and only reads the key when its hash matches. The keys are placed with the
+ * same spread as {@link java.util.HashMap} (h ^ h >>> 16), so both tables see the keys in the same order and only the
+ * layout differs. Null keys are not supported.
+ */
+public class FlatHashMap<K, V> {
+
+    private final float loadFactor;
+
+    private Object[] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    public FlatHashMap() {
+        this(0);
+    }
+
+    public FlatHashMap(int expectedSize) {
+        this(expectedSize, IntIntOpenHashMap.DEFAULT_LOAD_FACTOR);
+    }
+
+    public FlatHashMap(int expectedSize, float loadFactor) {
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("loadFactor must be in ]0, 1[: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        allocate(IntIntOpenHashMap.capacityFor(expectedSize, loadFactor));
+    }
+
+    // same as HashMap.hash()
+    static int spread(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int h = spread(key);
+        int mask = keys.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == null) {
+                return null;
+            }
+            if (hashes[i] == h && (k == key || k.equals(key))) {
+                return (V) values[i];
+            }
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        int h = spread(key);
+        int mask = keys.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == null) {
+                return false;
+            }
+            if (hashes[i] == h && (k == key || k.equals(key))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int h = spread(key);
+        int mask = keys.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == null) {
+                keys[i] = key;
+                hashes[i] = h;
+                values[i] = value;
+                if (++size > threshold) {
+                    rehash(keys.length << 1);
+                }
+                return null;
+            }
+            if (hashes[i] == h && (k == key || k.equals(key))) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        threshold = capacity == IntIntOpenHashMap.MAX_CAPACITY ? capacity - 1 : (int) (capacity * loadFactor);
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > IntIntOpenHashMap.MAX_CAPACITY) {
+            throw new IllegalStateException("map is full: " + size);
+        }
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                hashes[i] = oldHashes[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package fr.devoxx;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.profile.ProfilerResult;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.Result;
+
+/**
+ * What the gc profiler of our JMH version doesn't report: allocation and promotion rates, and the GC pauses of each
+ * iteration.
+ * <ul>
+ *     <li>@alloc.rate: bytes allocated by all the threads per second, from the HotSpot per-thread counters</li>
+ *     <li>@gc.promoted.rate: old generation growth across the young collections per second, i.e. what survived long
+ *     enough to be promoted (not reported by collectors without an old generation, like ZGC before JDK 21)</li>
+ *     <li>@gc.count, @gc.pause, @gc.pause.max and @gc.pause.share: the collections and their stop the world time,
+ *     in ms and in % of the iteration (not reported when the collector only exposes its concurrent cycles, like ZGC
+ *     before JDK 17)</li>
+ * </ul>
+ * JMH doesn't give the operation count of the iteration to the profilers, {@link GcReport#bytesPerOp(double,
+ * org.openjdk.jmh.results.RunResult)} derives the B/op from the rates and the score. The System.gc() of shouldDoGC
+ * are not counted.
+ */
+public class GcAllocationProfiler implements InternalProfiler {
+
+    // beans of concurrent cycles, their duration is not a pause
+    static final Set<String> CONCURRENT_COLLECTORS = new HashSet<>(Arrays.asList(
+            "ZGC", "ZGC Cycles", "ZGC Major Cycles", "ZGC Minor Cycles", "Shenandoah Cycles", "G1 Concurrent GC"));
+    // beans of the pauses of a concurrent collector, the cycle is already counted as a collection
+    static final Set<String> PAUSE_ONLY_COLLECTORS = new HashSet<>(Arrays.asList(
+            "ZGC Pauses", "ZGC Major Pauses", "ZGC Minor Pauses", "Shenandoah Pauses"));
+
+    private static final long NOTIFICATION_TIMEOUT_MS = 1000;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final NotificationListener listener = (notification, handback) -> onNotification(notification);
+
+    private long startNanos;
+    private long startAllocatedBytes;
+    private long startCollections;
+
+    // written by the notification thread
+    private long notifications;
+    private long collections;
+    private long pauseMillis;
+    private long maxPauseMillis;
+    private long promotedBytes;
+
+    @Override
+    public String label() {
+        return "gc.alloc";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Allocation, promotion and GC pauses per iteration";
+    }
+
+    @Override
+    public boolean checkSupport(List<String> msgs) {
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            msgs.add("The JVM doesn't count the bytes allocated by each thread");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        synchronized (this) {
+            notifications = 0;
+            collections = 0;
+            pauseMillis = 0;
+            maxPauseMillis = 0;
+            promotedBytes = 0;
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        }
+        startCollections = collectionCount();
+        startAllocatedBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public Collection<? extends Result<?>> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        long nanos = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes() - startAllocatedBytes;
+        long expectedNotifications = collectionCount() - startCollections;
+
+        // the notifications are sent asynchronously, the last ones may still be on their way
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(NOTIFICATION_TIMEOUT_MS);
+        synchronized (this) {
+            while (notifications < expectedNotifications && System.nanoTime() < deadline) {
+                try {
+                    wait(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            try {
+                ((NotificationEmitter) gc).removeNotificationListener(listener);
+            } catch (javax.management.ListenerNotFoundException e) {
+                // already removed
+            }
+        }
+
+        double seconds = nanos / 1e9;
+        List<Result<?>> results = new ArrayList<>();
+        results.add(new ProfilerResult("@alloc.rate", allocated / seconds, "B/s", AggregationPolicy.AVG));
+        synchronized (this) {
+            results.add(new ProfilerResult("@gc.count", collections, "counts", AggregationPolicy.SUM));
+            if (hasOldGeneration()) {
+                results.add(new ProfilerResult("@gc.promoted.rate", promotedBytes / seconds, "B/s", AggregationPolicy.AVG));
+            }
+            if (hasPauses()) {
+                results.add(new ProfilerResult("@gc.pause", pauseMillis, "ms", AggregationPolicy.SUM));
+                results.add(new ProfilerResult("@gc.pause.max", maxPauseMillis, "ms", AggregationPolicy.MAX));
+                results.add(new ProfilerResult("@gc.pause.share", 100.0 * pauseMillis / (seconds * 1000), "%", AggregationPolicy.AVG));
+            }
+        }
+        return results;
+    }
+
+    private synchronized void onNotification(Notification notification) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        notifications++;
+        notifyAll();
+        if ("System.gc()".equals(info.getGcCause())) {
+            return;
+        }
+        String name = info.getGcName();
+        long duration = info.getGcInfo().getDuration();
+        if (!PAUSE_ONLY_COLLECTORS.contains(name)) {
+            collections++;
+        }
+        if (!CONCURRENT_COLLECTORS.contains(name)) {
+            pauseMillis += duration;
+            maxPauseMillis = Math.max(maxPauseMillis, duration);
+        }
+        if (info.getGcAction().contains("minor")) {
+            promotedBytes += oldGenerationGrowth(info.getGcInfo().getMemoryUsageBeforeGc(), info.getGcInfo().getMemoryUsageAfterGc());
+        }
+    }
+
+    private static long oldGenerationGrowth(Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+        long growth = 0;
+        for (Map.Entry<String, MemoryUsage> pool : after.entrySet()) {
+            if (isOldGeneration(pool.getKey()) && before.containsKey(pool.getKey())) {
+                growth += Math.max(0, pool.getValue().getUsed() - before.get(pool.getKey()).getUsed());
+            }
+        }
+        return growth;
+    }
+
+    static boolean isOldGeneration(String pool) {
+        return pool.contains("Old Gen") || pool.contains("Tenured Gen");
+    }
+
+    private static boolean hasOldGeneration() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream().anyMatch(pool -> isOldGeneration(pool.getName()));
+    }
+
+    private static boolean hasPauses() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().anyMatch(gc -> !CONCURRENT_COLLECTORS.contains(gc.getName()));
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        long[] ids = THREADS.getAllThreadIds();
+        long bytes = 0;
+        for (long allocated : THREADS.getThreadAllocatedBytes(ids)) {
+            // -1 for the threads that died since getAllThreadIds()
+            bytes += Math.max(0, allocated);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,160 @@
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs benchmarks on G1, Parallel and ZGC with the gc, {@link GcAllocationProfiler} and {@link JfrProfiler} profilers,
+ * and prints B/op, promoted B/op, GC count and pauses per benchmark and collector.
+ * <pre>
+ * java -cp target/benchmarks.jar fr.devoxx.GcReport [benchmark regex...]
+ * </pre>
+ * By default the HashCodeBuilderBench benchmarks, where PersonWithHashCodeBuilder allocates a builder per hash, and
+ * the HashMapResize HashMap benchmarks, where let_it_autoresize drops the old table at each resize. ZGC needs JDK 11+:
+ * if the runner JVM is older, -Dzgc.jvm=/path/to/jdk11+/bin/java runs the ZGC forks on another JVM, else they are
+ * skipped.
+ */
+public class GcReport {
+
+    static final String[] DEFAULT_INCLUDES = {
+            ".*" + HashCodeBuilderBench.class.getSimpleName() + ".*",
+            ".*" + HashMapResize.class.getSimpleName() + ".(let_it_autoresize|size_it_at_creation)"
+    };
+
+    enum Collector {
+        G1("-XX:+UseG1GC"),
+        PARALLEL("-XX:+UseParallelGC"),
+        // experimental before JDK 15
+        Z("-XX:+UnlockExperimentalVMOptions", "-XX:+UseZGC");
+
+        final String[] flags;
+
+        Collector(String... flags) {
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * @return bytes per operation, from a rate per second and the score of the benchmark
+     */
+    static double bytesPerOp(double bytesPerSecond, RunResult result) {
+        return bytesPerSecond / opsPerSecond(result.getPrimaryResult());
+    }
+
+    // "ops/ms" or "ms/op" -> operations per second
+    static double opsPerSecond(Result<?> score) {
+        String unit = score.getScoreUnit();
+        if (unit.startsWith("ops/")) {
+            return score.getScore() * perSecond(unit.substring("ops/".length()));
+        }
+        if (unit.endsWith("/op")) {
+            return perSecond(unit.substring(0, unit.length() - "/op".length())) / score.getScore();
+        }
+        throw new IllegalArgumentException("unknown unit " + unit);
+    }
+
+    private static double perSecond(String timeUnit) {
+        switch (timeUnit) {
+            case "ns":
+                return 1e9;
+            case "us":
+                return 1e6;
+            case "ms":
+                return 1e3;
+            case "s":
+                return 1;
+            case "min":
+                return 1.0 / 60;
+            default:
+                throw new IllegalArgumentException("unknown time unit " + timeUnit);
+        }
+    }
+
+    static boolean runnerSupportsZgc() {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 11;
+    }
+
+    static void printSummary(Collector collector, Collection<RunResult> results) {
+        System.out.println();
+        System.out.println(collector);
+        System.out.println(String.format("%-70s %14s %12s %12s %8s %10s %10s %8s",
+                "Benchmark", "score", "B/op", "promoted/op", "GCs", "pause ms", "max ms", "pause %"));
+        for (RunResult result : results) {
+            StringBuilder name = new StringBuilder(result.getParams().getBenchmark().replaceFirst("^.*\\.([^.]+\\.[^.]+)$", "$1"));
+            for (String key : result.getParams().getParamsKeys()) {
+                name.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+            }
+            Result<?> primary = result.getPrimaryResult();
+            System.out.println(String.format("%-70s %14s %12s %12s %8s %10s %10s %8s",
+                    name,
+                    String.format("%.3f %s", primary.getScore(), primary.getScoreUnit()),
+                    perOp(result, "@alloc.rate"),
+                    perOp(result, "@gc.promoted.rate"),
+                    secondary(result, "@gc.count", "%.0f"),
+                    secondary(result, "@gc.pause", "%.0f"),
+                    secondary(result, "@gc.pause.max", "%.0f"),
+                    secondary(result, "@gc.pause.share", "%.2f")));
+        }
+    }
+
+    private static String perOp(RunResult result, String rate) {
+        Result<?> secondary = result.getSecondaryResults().get(rate);
+        return secondary == null ? "-" : String.format("%.1f", bytesPerOp(secondary.getScore(), result));
+    }
+
+    private static String secondary(RunResult result, String label, String format) {
+        Result<?> secondary = result.getSecondaryResults().get(label);
+        return secondary == null ? "-" : String.format(format, secondary.getScore());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder opt = new OptionsBuilder()
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .jvmArgs("-Xmx2g", "-Xms2g")
+                .addProfiler(GCProfiler.class)
+                .addProfiler(GcAllocationProfiler.class)
+                .addProfiler(JfrProfiler.class)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .threads(1)
+                .forks(1);
+        for (String include : args.length > 0 ? args : DEFAULT_INCLUDES) {
+            opt.include(include);
+        }
+        Options base = opt.build();
+
+        String zgcJvm = System.getProperty("zgc.jvm");
+        List<Collector> skipped = new ArrayList<>();
+        for (Collector collector : Collector.values()) {
+            ChainedOptionsBuilder run = new OptionsBuilder().parent(base).jvmArgsAppend(collector.flags);
+            if (collector == Collector.Z && !runnerSupportsZgc()) {
+                if (zgcJvm == null) {
+                    skipped.add(collector);
+                    continue;
+                }
+                run.jvm(zgcJvm);
+            }
+            printSummary(collector, ResultsStore.run(run.build()));
+        }
+        for (Collector collector : skipped) {
+            System.out.println();
+            System.out.println(collector + " skipped: it needs JDK 11+, run with -Dzgc.jvm=/path/to/jdk11+/bin/java");
+        }
+    }
+}
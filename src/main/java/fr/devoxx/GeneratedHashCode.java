@@ -0,0 +1,189 @@
+package fr.devoxx;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Same result as {@link org.apache.commons.lang3.builder.HashCodeBuilder#reflectionHashCode(Object)}, without the
+ * reflection and the builder on each call.
+ * <p>
+ * The fields are looked up once per class, and turned into a single {@link MethodHandle} (Object)int computing
+ * 17 * 37^n + ... + hash(field n), cached in a {@link ClassValue}. When the handle is kept in a static final field,
+ * the JIT sees it as a constant and inlines the whole tree: no allocation and no reflection per call.
+ * <pre>
+ * private static final MethodHandle HASH_CODE = GeneratedHashCode.forClass(MyClass.class);
+ *
+ * public int hashCode() {
+ *     return GeneratedHashCode.invoke(HASH_CODE, this);
+ * }
+ * </pre>
+ * Like reflectionHashCode, static, transient and synthetic ($) fields are skipped, superclass fields are included,
+ * and arrays are hashed element by element. Cycles between objects are not detected.
+ */
+public class GeneratedHashCode {
+
+    // same values as the HashCodeBuilder defaults
+    static final int INITIAL = 17;
+    static final int MULTIPLIER = 37;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<MethodHandle> HASH_CODES = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            return generate(type);
+        }
+    };
+
+    /**
+     * @return a (Object)int handle computing the hashCode of instances of type
+     */
+    public static MethodHandle forClass(Class<?> type) {
+        return HASH_CODES.get(type);
+    }
+
+    public static int invoke(MethodHandle hashCode, Object o) {
+        try {
+            return (int) hashCode.invokeExact(o);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Drop-in replacement for reflectionHashCode. The handle is not a constant here so it is not inlined, but there
+     * is still no allocation per call.
+     */
+    public static int reflectionHashCode(Object o) {
+        return invoke(HASH_CODES.get(o.getClass()), o);
+    }
+
+    private static MethodHandle generate(Class<?> type) {
+        try {
+            // acc = 17, then acc = appendX(acc, field) for each field
+            MethodHandle hash = MethodHandles.dropArguments(MethodHandles.constant(int.class, INITIAL), 0, Object.class);
+            for (Field field : hashedFields(type)) {
+                field.setAccessible(true);
+                MethodHandle getter = LOOKUP.unreflectGetter(field);
+                Class<?> fieldType = field.getType();
+                MethodHandle append = appender(fieldType);
+                // (int, Object) -> int
+                MethodHandle appendField = MethodHandles.filterArguments(append, 1,
+                        getter.asType(MethodType.methodType(append.type().parameterType(1), Object.class)));
+                hash = MethodHandles.foldArguments(appendField, hash);
+            }
+            return hash;
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("can't generate hashCode for " + type, e);
+        }
+    }
+
+    static List<Field> hashedFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        // same order as reflectionHashCode: the class first, then its superclasses
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && field.getName().indexOf('$') == -1) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static MethodHandle appender(Class<?> fieldType) throws NoSuchMethodException, IllegalAccessException {
+        Class<?> parameter = fieldType.isPrimitive() ? fieldType : Object.class;
+        return LOOKUP.findStatic(GeneratedHashCode.class, "append", MethodType.methodType(int.class, int.class, parameter));
+    }
+
+    // reflectionHashCode reads the fields boxed, so primitives are hashed like their wrapper
+
+    static int append(int acc, boolean value) {
+        return acc * MULTIPLIER + Boolean.hashCode(value);
+    }
+
+    static int append(int acc, byte value) {
+        return acc * MULTIPLIER + value;
+    }
+
+    static int append(int acc, char value) {
+        return acc * MULTIPLIER + value;
+    }
+
+    static int append(int acc, short value) {
+        return acc * MULTIPLIER + value;
+    }
+
+    static int append(int acc, int value) {
+        return acc * MULTIPLIER + value;
+    }
+
+    static int append(int acc, long value) {
+        return acc * MULTIPLIER + Long.hashCode(value);
+    }
+
+    static int append(int acc, float value) {
+        return acc * MULTIPLIER + Float.hashCode(value);
+    }
+
+    static int append(int acc, double value) {
+        return acc * MULTIPLIER + Double.hashCode(value);
+    }
+
+    static int append(int acc, Object value) {
+        if (value == null) {
+            return acc * MULTIPLIER;
+        }
+        if (!value.getClass().isArray()) {
+            return acc * MULTIPLIER + value.hashCode();
+        }
+        // HashCodeBuilder appends array elements one by one
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof int[]) {
+            for (int element : (int[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof long[]) {
+            for (long element : (long[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof byte[]) {
+            for (byte element : (byte[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof char[]) {
+            for (char element : (char[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof short[]) {
+            for (short element : (short[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof boolean[]) {
+            // unlike boolean fields, elements are not boxed and HashCodeBuilder.append(boolean) gives 0 or 1
+            for (boolean element : (boolean[]) value) {
+                acc = acc * MULTIPLIER + (element ? 0 : 1);
+            }
+        } else if (value instanceof float[]) {
+            for (float element : (float[]) value) {
+                acc = append(acc, element);
+            }
+        } else if (value instanceof double[]) {
+            for (double element : (double[]) value) {
+                acc = append(acc, element);
+            }
+        }
+        return acc;
+    }
+}
@@ -31,14 +31,12 @@
 
 package fr.devoxx;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.lang.invoke.MethodHandle;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -46,15 +44,20 @@ import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
 import org.openjdk.jmh.infra.Blackhole;
-import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
 
 @State(Scope.Benchmark)
 @Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
@@ -65,18 +68,45 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 @Fork(1)
 public class HashCodeBuilderBench {
 
-    private static final String PERSONS_FILE = "names.txt";
-
-    private static List<Person> persons;
-    private static List<PersonWithHashCodeBuilder> personsWithHashCodeBuilders;
-    private static List<PersonWithHashCodeBuilder2> personsWithHashCodeBuilders2;
-    private static List<PersonWithReflectionHashCode> personsWithReflectionHashCodes;
-
-    static {
-        persons = loadPersonsFromFile(Person::new);
-        personsWithHashCodeBuilders = loadPersonsFromFile(PersonWithHashCodeBuilder::new);
-        personsWithHashCodeBuilders2 = loadPersonsFromFile(PersonWithHashCodeBuilder2::new);
-        personsWithReflectionHashCodes = loadPersonsFromFile(PersonWithReflectionHashCode::new);
+    // 4g for the DRAM sized corpus
+    static final String[] JVM_ARGS = {"-Xmx4g", "-Xms4g", "-XX:+DoEscapeAnalysis"};
+
+    /**
+     * 0 for names.txt, or the number of generated keys, see {@link KeyCorpusGenerator} for L1 to DRAM sized corpora
+     */
+    @Param({"0"})
+    public int corpusSize = 0;
+
+    /**
+     * {@link MappedKeyCorpus} file to read the keys from instead, or "none"
+     */
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    private List<Person> persons;
+    private List<PersonWithHashCodeBuilder> personsWithHashCodeBuilders;
+    private List<PersonWithHashCodeBuilder2> personsWithHashCodeBuilders2;
+    private List<PersonWithReflectionHashCode> personsWithReflectionHashCodes;
+    private List<PersonWithGeneratedHashCode> personsWithGeneratedHashCodes;
+    private List<PersonWithGeneratedReflectionHashCode> personsWithGeneratedReflectionHashCodes;
+
+    // only the persons of the running benchmark are built, big corpora wouldn't fit four times in the heap
+    @Setup
+    public void load_persons(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        if (benchmark.endsWith(".simpleHashCode")) {
+            persons = KeyCorpus.load(corpusSize, corpusFile, Person::new);
+        } else if (benchmark.endsWith(".hashCodeBuilder")) {
+            personsWithHashCodeBuilders = KeyCorpus.load(corpusSize, corpusFile, PersonWithHashCodeBuilder::new);
+        } else if (benchmark.endsWith(".hashCodeBuilder2")) {
+            personsWithHashCodeBuilders2 = KeyCorpus.load(corpusSize, corpusFile, PersonWithHashCodeBuilder2::new);
+        } else if (benchmark.endsWith(".reflectionHashCode")) {
+            personsWithReflectionHashCodes = KeyCorpus.load(corpusSize, corpusFile, PersonWithReflectionHashCode::new);
+        } else if (benchmark.endsWith(".generatedHashCode")) {
+            personsWithGeneratedHashCodes = KeyCorpus.load(corpusSize, corpusFile, PersonWithGeneratedHashCode::new);
+        } else if (benchmark.endsWith(".generatedReflectionHashCode")) {
+            personsWithGeneratedReflectionHashCodes = KeyCorpus.load(corpusSize, corpusFile, PersonWithGeneratedReflectionHashCode::new);
+        }
     }
 
     @Benchmark
@@ -115,15 +145,22 @@ public class HashCodeBuilderBench {
         blackhole.consume(set);
     }
 
-    private static <T> List<T> loadPersonsFromFile(Function<String, T> map) {
-        try {
-            return Files.readAllLines(Paths.get(Thread.currentThread().getContextClassLoader().getResource(PERSONS_FILE).getFile()))
-                    .stream()
-                    .map(map)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    @Benchmark
+    public void generatedHashCode(Blackhole blackhole) {
+        HashSet<PersonWithGeneratedHashCode> set = new HashSet<>(personsWithGeneratedHashCodes.size());
+        for (PersonWithGeneratedHashCode person : personsWithGeneratedHashCodes) {
+            set.add(person);
         }
+        blackhole.consume(set);
+    }
+
+    @Benchmark
+    public void generatedReflectionHashCode(Blackhole blackhole) {
+        HashSet<PersonWithGeneratedReflectionHashCode> set = new HashSet<>(personsWithGeneratedReflectionHashCodes.size());
+        for (PersonWithGeneratedReflectionHashCode person : personsWithGeneratedReflectionHashCodes) {
+            set.add(person);
+        }
+        blackhole.consume(set);
     }
 
     static class Person {
@@ -160,7 +197,7 @@ public class HashCodeBuilderBench {
         public boolean equals(Object o) {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
-            Person person = (Person) o;
+            PersonWithHashCodeBuilder person = (PersonWithHashCodeBuilder) o;
             return !(name != null ? !name.equals(person.name) : person.name != null);
         }
 
@@ -202,7 +239,7 @@ public class HashCodeBuilderBench {
         public boolean equals(Object o) {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
-            Person person = (Person) o;
+            PersonWithHashCodeBuilder2 person = (PersonWithHashCodeBuilder2) o;
             return !(name != null ? !name.equals(person.name) : person.name != null);
         }
 
@@ -224,7 +261,7 @@ public class HashCodeBuilderBench {
         public boolean equals(Object o) {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
-            Person person = (Person) o;
+            PersonWithReflectionHashCode person = (PersonWithReflectionHashCode) o;
             return !(name != null ? !name.equals(person.name) : person.name != null);
         }
 
@@ -234,13 +271,228 @@ public class HashCodeBuilderBench {
         }
     }
 
+    /**
+     * PersonWithHashCodeBuilder2 with the matching EqualsBuilder.
+     */
+    static class PersonWithEqualsBuilder {
+
+        private final String name;
+
+        public PersonWithEqualsBuilder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithEqualsBuilder person = (PersonWithEqualsBuilder) o;
+            return new EqualsBuilder().append(name, person.name).isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder().append(name).build();
+        }
+    }
+
+    /**
+     * PersonWithReflectionHashCode with the matching reflectionEquals.
+     */
+    static class PersonWithReflectionEquals {
+
+        private final String name;
+
+        public PersonWithReflectionEquals(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return EqualsBuilder.reflectionEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCodeBuilder.reflectionHashCode(this);
+        }
+    }
+
+    static class PersonWithGeneratedHashCode {
+
+        private static final MethodHandle HASH_CODE = GeneratedHashCode.forClass(PersonWithGeneratedHashCode.class);
+
+        private final String name;
+
+        public PersonWithGeneratedHashCode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithGeneratedHashCode person = (PersonWithGeneratedHashCode) o;
+            return !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            return GeneratedHashCode.invoke(HASH_CODE, this);
+        }
+    }
+
+    /**
+     * PersonWithHashCodeBuilder with the matching EqualsBuilder, 19 appends as well.
+     */
+    static class PersonWithEqualsBuilder19 {
+
+        private final String name;
+
+        public PersonWithEqualsBuilder19(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithEqualsBuilder19 person = (PersonWithEqualsBuilder19) o;
+            return new EqualsBuilder()
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .append(name, person.name)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder()
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .append(name)
+                    .build();
+        }
+    }
+
+    /**
+     * PersonWithGeneratedHashCode with reflectionEquals, the generated hashCode replaces reflectionHashCode only.
+     */
+    static class PersonWithGeneratedHashCodeReflectionEquals {
+
+        private static final MethodHandle HASH_CODE = GeneratedHashCode.forClass(PersonWithGeneratedHashCodeReflectionEquals.class);
+
+        private final String name;
+
+        public PersonWithGeneratedHashCodeReflectionEquals(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return EqualsBuilder.reflectionEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return GeneratedHashCode.invoke(HASH_CODE, this);
+        }
+    }
+
+    static class PersonWithGeneratedReflectionHashCode {
+
+        private final String name;
+
+        public PersonWithGeneratedReflectionHashCode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PersonWithGeneratedReflectionHashCode person = (PersonWithGeneratedReflectionHashCode) o;
+            return !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            return GeneratedHashCode.reflectionHashCode(this);
+        }
+    }
+
+    /**
+     * Bytes allocated by each hashCode() once compiled, 0 when the allocations are eliminated. Each variant runs the
+     * single call {@link EscapeAnalysisBench#hash_code} in its own fork, with the JVM options of the benchmark, so
+     * that the call site only ever sees one Person class and can be inlined.
+     */
+    static void printHashCodeAllocations() throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + EscapeAnalysisBench.class.getSimpleName() + ".hash_code")
+                .param("variant", "simple", "hash_code_builder", "hash_code_builder2", "reflection", "generated", "generated_reflection")
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementTime(TimeValue.seconds(1))
+                .jvmArgs(JVM_ARGS)
+                .addProfiler(GcAllocationProfiler.class)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        Collection<RunResult> results = ResultsStore.run(opt);
+        System.out.println();
+        System.out.println(String.format("%-40s %10s", "hashCode", "B/call"));
+        for (RunResult result : results) {
+            Result<?> alloc = result.getSecondaryResults().get("@alloc.rate");
+            System.out.println(String.format("%-40s %10.2f", result.getParams().getParam("variant"),
+                    alloc == null ? Double.NaN : GcReport.bytesPerOp(alloc.getScore(), result)));
+        }
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(".*" + HashCodeBuilderBench.class.getSimpleName() + ".*")
                 .shouldDoGC(true)
+                .param("corpusSize", "0", KeyCorpusGenerator.CACHE_LEVEL_SIZES[0], KeyCorpusGenerator.CACHE_LEVEL_SIZES[1],
+                        KeyCorpusGenerator.CACHE_LEVEL_SIZES[2], KeyCorpusGenerator.CACHE_LEVEL_SIZES[3])
                 .warmupIterations(10)
                 .measurementIterations(10)
-                .jvmArgs("-Xmx128m", "-Xms128m", "-XX:+DoEscapeAnalysis")
+                .jvmArgs(JVM_ARGS)
 //                .warmupTime(TimeValue.seconds(5))
 //                .measurementTime(TimeValue.seconds(5))
 //                .mode(Mode.AverageTime)
@@ -249,6 +501,7 @@ public class HashCodeBuilderBench {
                 .forks(1)
                 .build();
 
-        new Runner(opt).run();
+        ResultsStore.run(opt);
+        printHashCodeAllocations();
     }
 }
@@ -31,13 +31,9 @@
 
 package fr.devoxx;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -46,11 +42,11 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
@@ -78,9 +74,7 @@ HashCodeComplexity.charsInHashCode              6  avgt    5     61,946 ±    4,
 
      */
 
-    private static final String PERSONS_FILE = "names.txt";
-
-    private static List<Person> persons = loadPersonsFromFile();
+    private List<Person> persons;
 
     /**
      * Nombre de chars à prendre en compte pour le calcul du hashCode
@@ -88,6 +82,26 @@ HashCodeComplexity.charsInHashCode              6  avgt    5     61,946 ±    4,
     @Param({"0", "1", "2", "3", "4", "5", "6"})
     public static int charsToHash = 0;
 
+    // longer than any key, the whole name is hashed
+    static final int ALL_CHARS = Integer.MAX_VALUE;
+
+    /**
+     * 0 for names.txt, or the number of generated keys, see {@link KeyCorpusGenerator} for L1 to DRAM sized corpora
+     */
+    @Param({"0"})
+    public int corpusSize = 0;
+
+    /**
+     * {@link MappedKeyCorpus} file to read the keys from instead, or "none"
+     */
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    @Setup
+    public void load_persons() {
+        persons = KeyCorpus.load(corpusSize, corpusFile, Person::new);
+    }
+
     @Benchmark
     public void charsInHashCode(Blackhole blackhole) {
         HashSet<Person> set = new HashSet<>();
@@ -97,17 +111,6 @@ HashCodeComplexity.charsInHashCode              6  avgt    5     61,946 ±    4,
         blackhole.consume(set);
     }
 
-    private static List<Person> loadPersonsFromFile() {
-        try {
-            return Files.readAllLines(Paths.get(Thread.currentThread().getContextClassLoader().getResource(PERSONS_FILE).getFile()))
-                    .stream()
-                    .map(Person::new)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     static class Person {
 
         private final String name;
@@ -126,7 +129,8 @@ HashCodeComplexity.charsInHashCode              6  avgt    5     61,946 ±    4,
 
         @Override
         public int hashCode() {
-            return name == null ? 0 : name.substring(0, charsToHash).hashCode();
+            // generated keys can be shorter than charsToHash, "Vu Dn"
+            return name == null ? 0 : name.substring(0, Math.min(charsToHash, name.length())).hashCode();
         }
     }
 
@@ -138,12 +142,21 @@ HashCodeComplexity.charsInHashCode              6  avgt    5     61,946 ±    4,
                 .measurementIterations(5)
                 .warmupTime(TimeValue.seconds(10))
                 .measurementTime(TimeValue.seconds(10))
+                .param("corpusSize", "0", String.valueOf(KeyCorpusGenerator.L1_SIZED), String.valueOf(KeyCorpusGenerator.L2_SIZED))
+                .jvmArgs("-Xmx4g", "-Xms4g")
                 .mode(Mode.AverageTime)
                 .timeUnit(TimeUnit.MICROSECONDS)
                 .threads(1)
                 .forks(1)
                 .build();
 
-        new Runner(opt).run();
+        ResultsStore.run(opt);
+
+        // the whole name only: even 6 chars leave ~40 keys per hash at 300k keys, the build is quadratic
+        ResultsStore.run(new OptionsBuilder()
+                .parent(opt)
+                .param("corpusSize", String.valueOf(KeyCorpusGenerator.LLC_SIZED), String.valueOf(KeyCorpusGenerator.DRAM_SIZED))
+                .param("charsToHash", String.valueOf(ALL_CHARS))
+                .build());
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Worst case of user supplied keys: every key has the same hashCode, see {@link CollidingStrings}.
+ * <p>
+ * Since Java 8, a HashMap bin becomes a red-black tree when its 9th key is added (more than TREEIFY_THRESHOLD = 8),
+ * once the table has at least 64 bins, before that the table is resized instead. With Comparable keys (String) the
+ * tree is searched in O(log n). Without, compareTo can't order the keys and find() has to search both sides of each node,
+ * so the tree is no better than the list: O(n) per operation, O(n^2) to fill the set, as in HashCodeComplexity
+ * with charsToHash=0. A seeded hash, unknown to the attacker, removes the collisions instead.
+ */
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashDosBench {
+
+    /**
+     * colliding keys, or random keys of the same length as a baseline
+     */
+    @Param({"colliding", "random"})
+    public String attack;
+
+    /**
+     * comparable: the Strings, non_comparable: the Strings wrapped in a key with the same hashCode and equals,
+     * seeded: the Strings wrapped in a key hashed with a seed drawn at setup
+     */
+    @Param({"comparable", "non_comparable", "seeded"})
+    public String keyType;
+
+    @Param({"1024", "8192"})
+    public int keyCount;
+
+    private List<Object> keys;
+    // equal to the keys but not the same instances, so that lookups call equals()
+    private List<Object> lookups;
+    private HashSet<Object> set;
+
+    @Setup
+    public void create_keys() {
+        List<String> strings = strings(attack, keyCount);
+        Function<String, Object> key = key(keyType, ThreadLocalRandom.current().nextLong());
+        keys = new ArrayList<>(keyCount);
+        lookups = new ArrayList<>(keyCount);
+        for (String s : strings) {
+            keys.add(key.apply(s));
+            lookups.add(key.apply(new String(s)));
+        }
+        set = new HashSet<>(keys);
+    }
+
+    static List<String> strings(String attack, int keyCount) {
+        switch (attack) {
+            case "colliding":
+                return CollidingStrings.generate(keyCount);
+            case "random":
+                return CollidingStrings.random(keyCount, KeyCorpusGenerator.DEFAULT_SEED);
+            default:
+                throw new IllegalArgumentException("unknown attack: " + attack);
+        }
+    }
+
+    static Function<String, Object> key(String keyType, long seed) {
+        switch (keyType) {
+            case "comparable":
+                return s -> s;
+            case "non_comparable":
+                return NonComparableKey::new;
+            case "seeded":
+                return s -> new SeededKey(s, seed);
+            default:
+                throw new IllegalArgumentException("unknown key type: " + keyType);
+        }
+    }
+
+    @Benchmark
+    public void insert(Blackhole blackhole) {
+        HashSet<Object> set = new HashSet<>();
+        for (Object key : keys) {
+            set.add(key);
+        }
+        blackhole.consume(set);
+    }
+
+    @Benchmark
+    public int lookup() {
+        int found = 0;
+        for (Object key : lookups) {
+            if (set.contains(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    static class NonComparableKey {
+
+        private final String name;
+
+        public NonComparableKey(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            NonComparableKey key = (NonComparableKey) o;
+            return name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    /**
+     * What a map hashing its keys with a per instance seed would see, the seed being drawn when the map is created.
+     */
+    static class SeededKey {
+
+        private final String name;
+        private final int hash;
+
+        public SeededKey(String name, long seed) {
+            this.name = name;
+            this.hash = StringHash.fold(StringHash.xxHash64(name, seed));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SeededKey key = (SeededKey) o;
+            return hash == key.hash && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Number of tree bins and the size of the largest bin, read from the HashMap table behind the set.
+     */
+    static int[] bins(HashSet<?> set) throws ReflectiveOperationException {
+        Field mapField = HashSet.class.getDeclaredField("map");
+        mapField.setAccessible(true);
+        Field tableField = HashMap.class.getDeclaredField("table");
+        tableField.setAccessible(true);
+        Field nextField = Class.forName("java.util.HashMap$Node").getDeclaredField("next");
+        nextField.setAccessible(true);
+        Object[] table = (Object[]) tableField.get(mapField.get(set));
+        int treeBins = 0;
+        int maxBin = 0;
+        for (Object bin : table == null ? new Object[0] : table) {
+            if (bin == null) {
+                continue;
+            }
+            if (bin.getClass().getSimpleName().equals("TreeNode")) {
+                treeBins++;
+            }
+            // TreeNodes keep the next links of the list they come from
+            int size = 0;
+            for (Object node = bin; node != null; node = nextField.get(node)) {
+                size++;
+            }
+            maxBin = Math.max(maxBin, size);
+        }
+        return new int[]{treeBins, maxBin};
+    }
+
+    static void printBins(int keyCount) throws ReflectiveOperationException {
+        System.out.println(String.format("%-10s %-15s %10s %10s", "attack", "keyType", "tree bins", "max bin"));
+        for (String attack : new String[]{"colliding", "random"}) {
+            for (String keyType : new String[]{"comparable", "non_comparable", "seeded"}) {
+                Function<String, Object> key = key(keyType, ThreadLocalRandom.current().nextLong());
+                HashSet<Object> set = new HashSet<>();
+                for (String s : strings(attack, keyCount)) {
+                    set.add(key.apply(s));
+                }
+                int[] bins = bins(set);
+                System.out.println(String.format("%-10s %-15s %10d %10d", attack, keyType, bins[0], bins[1]));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, ReflectiveOperationException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + HashDosBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+        printBins(8192);
+    }
+}
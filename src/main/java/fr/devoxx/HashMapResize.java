@@ -48,7 +48,6 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
@@ -89,7 +88,8 @@ public class HashMapResize {
 
     @Benchmark
     public void size_it_at_creation(Blackhole blackhole) throws NoSuchFieldException, IllegalAccessException {
-        HashMap<Object, Object> map = new HashMap<>((int)(insertCount * 0.75f + 1));
+        // (int)(insertCount * 0.75f + 1) was too small for 24577, 196609 and 3145729: the last put resized the table
+        HashMap<Object, Object> map = new HashMap<>(MapInspector.initialCapacity(insertCount, 0.75f));
 
         // to ensure the backing array size doesn't change
 //        Field table = HashMap.class.getDeclaredField("table");
@@ -110,6 +110,75 @@ public class HashMapResize {
         blackhole.consume(map);
     }
 
+    @Benchmark
+    public void int_open_map_autoresize(Blackhole blackhole) {
+        IntIntOpenHashMap map = new IntIntOpenHashMap();
+        for (int i = 0; i < insertCount; i++) {
+            map.put(i, i);
+        }
+        blackhole.consume(map);
+    }
+
+    @Benchmark
+    public void int_open_map_size_it_at_creation(Blackhole blackhole) {
+        IntIntOpenHashMap map = new IntIntOpenHashMap(insertCount);
+        for (int i = 0; i < insertCount; i++) {
+            map.put(i, i);
+        }
+        blackhole.consume(map);
+    }
+
+    @Benchmark
+    public void robin_hood_map_autoresize(Blackhole blackhole) {
+        RobinHoodIntIntHashMap map = new RobinHoodIntIntHashMap();
+        for (int i = 0; i < insertCount; i++) {
+            map.put(i, i);
+        }
+        blackhole.consume(map);
+    }
+
+    @Benchmark
+    public void robin_hood_map_size_it_at_creation(Blackhole blackhole) {
+        RobinHoodIntIntHashMap map = new RobinHoodIntIntHashMap(insertCount);
+        for (int i = 0; i < insertCount; i++) {
+            map.put(i, i);
+        }
+        blackhole.consume(map);
+    }
+
+    /**
+     * Retained heap per entry, boxed Integers included for the HashMap since that's what the primitive maps avoid.
+     */
+    static void printBytesPerEntry() {
+        System.out.println();
+        System.out.println(String.format("%-12s %15s %15s %15s", "insertCount", "HashMap", "IntIntOpen", "RobinHood"));
+        for (int count : new int[]{24576, 24577, 196608, 196609, 3145728, 3145729}) {
+            double hashMap = HeapFootprint.bytesPerEntry(() -> {
+                HashMap<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    Integer integer = i;
+                    map.put(integer, integer);
+                }
+                return map;
+            }, count);
+            double open = HeapFootprint.bytesPerEntry(() -> {
+                IntIntOpenHashMap map = new IntIntOpenHashMap();
+                for (int i = 0; i < count; i++) {
+                    map.put(i, i);
+                }
+                return map;
+            }, count);
+            double robinHood = HeapFootprint.bytesPerEntry(() -> {
+                RobinHoodIntIntHashMap map = new RobinHoodIntIntHashMap();
+                for (int i = 0; i < count; i++) {
+                    map.put(i, i);
+                }
+                return map;
+            }, count);
+            System.out.println(String.format("%-12d %15.1f %15.1f %15.1f", count, hashMap, open, robinHood));
+        }
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(".*" + HashMapResize.class.getSimpleName() + ".*")
@@ -125,6 +194,7 @@ public class HashMapResize {
                 .forks(1)
                 .build();
 
-        new Runner(opt).run();
+        ResultsStore.run(opt);
+        printBytesPerEntry();
     }
 }
@@ -0,0 +1,242 @@
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Computes offline how a hashCode spreads a dataset over the {@link java.util.HashMap} tables, without running any benchmark.
+ * <p>
+ * The interesting number is {@link BucketStats#costFactor()}: the average number of nodes visited by a successful lookup
+ * divided by what a perfectly uniform hash would give on the same table. It is ~1 for a good hashCode and explodes
+ * with the collisions, which is what {@link HashCodeComplexity#charsInHashCode} measures (0 vs 6 hashed chars).
+ */
+public class HashQualityAnalyzer<T> {
+
+    // same values as in HashMap
+    static final int TREEIFY_THRESHOLD = 8;
+    static final int MIN_TREEIFY_CAPACITY = 64;
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    // table sizes seen in FindHashMapResizingThresholds
+    static final int MIN_TABLE_SIZE = 16;
+    static final int MAX_TABLE_SIZE = 262144;
+
+    // above this, a hashCode is considered bad enough to be rejected
+    static final double DEFAULT_MAX_COST_FACTOR = 1.5;
+
+    private final Function<T, Integer> hashFunction;
+
+    public HashQualityAnalyzer(Function<T, Integer> hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+
+    public List<BucketStats> analyze(List<T> keys) {
+        int[] hashes = hashes(keys);
+        List<BucketStats> stats = new ArrayList<>();
+        for (int tableSize = MIN_TABLE_SIZE; tableSize <= MAX_TABLE_SIZE; tableSize <<= 1) {
+            stats.add(analyze(hashes, tableSize));
+        }
+        return stats;
+    }
+
+    /**
+     * Stats for the table {@link java.util.HashMap} would end up with after inserting all the keys with the default load factor.
+     */
+    public BucketStats analyzeResidentTable(List<T> keys) {
+        return analyze(hashes(keys), residentTableSize(keys.size()));
+    }
+
+    public BucketStats analyze(List<T> keys, int tableSize) {
+        return analyze(hashes(keys), tableSize);
+    }
+
+    /**
+     * @throws IllegalStateException if the hashCode gives lookups more than maxCostFactor times slower than a uniform hash
+     */
+    public BucketStats check(List<T> keys, double maxCostFactor) {
+        BucketStats stats = analyzeResidentTable(keys);
+        if (stats.costFactor() > maxCostFactor) {
+            throw new IllegalStateException("hashCode rejected, cost factor " + stats.costFactor() + " > " + maxCostFactor + ": " + stats);
+        }
+        return stats;
+    }
+
+    static int residentTableSize(int size) {
+        int tableSize = MIN_TABLE_SIZE;
+        while (size > (int) (tableSize * DEFAULT_LOAD_FACTOR)) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private int[] hashes(List<T> keys) {
+        int[] hashes = new int[keys.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            Integer h = hashFunction.apply(keys.get(i));
+            hashes[i] = h == null ? 0 : h;
+        }
+        return hashes;
+    }
+
+    static BucketStats analyze(int[] hashes, int tableSize) {
+        int[] chains = new int[tableSize];
+        Set<Integer> distinct = new HashSet<>();
+        for (int h : hashes) {
+            chains[spread(h) & (tableSize - 1)]++;
+            distinct.add(h);
+        }
+
+        int maxChain = 0;
+        for (int chain : chains) {
+            maxChain = Math.max(maxChain, chain);
+        }
+        int[] histogram = new int[maxChain + 1];
+        double expected = (double) hashes.length / tableSize;
+        double chiSquare = 0;
+        long probes = 0;
+        int treeBins = 0;
+        for (int chain : chains) {
+            histogram[chain]++;
+            chiSquare += (chain - expected) * (chain - expected) / expected;
+            // HashMap treeifies when the 9th node is added, below MIN_TREEIFY_CAPACITY it resizes instead
+            if (chain > TREEIFY_THRESHOLD && tableSize >= MIN_TREEIFY_CAPACITY) {
+                treeBins++;
+                // a balanced tree, about log2(chain) + 1 probes per node (more when the keys aren't Comparable)
+                probes += Math.round(chain * (Math.log(chain) / Math.log(2) + 1));
+            } else {
+                // finding the k-th node of a chain costs k probes
+                probes += (long) chain * (chain + 1) / 2;
+            }
+        }
+        return new BucketStats(tableSize, hashes.length, distinct.size(), histogram, chiSquare, maxChain, treeBins, probes);
+    }
+
+    // same as HashMap.hash()
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    public static class BucketStats {
+
+        private final int tableSize;
+        private final int keys;
+        private final int distinctHashes;
+        private final int[] occupancyHistogram;
+        private final double chiSquare;
+        private final int maxChainLength;
+        private final int treeBins;
+        private final long probes;
+
+        BucketStats(int tableSize, int keys, int distinctHashes, int[] occupancyHistogram, double chiSquare, int maxChainLength, int treeBins, long probes) {
+            this.tableSize = tableSize;
+            this.keys = keys;
+            this.distinctHashes = distinctHashes;
+            this.occupancyHistogram = occupancyHistogram;
+            this.chiSquare = chiSquare;
+            this.maxChainLength = maxChainLength;
+            this.treeBins = treeBins;
+            this.probes = probes;
+        }
+
+        public int tableSize() {
+            return tableSize;
+        }
+
+        public int keys() {
+            return keys;
+        }
+
+        public int distinctHashes() {
+            return distinctHashes;
+        }
+
+        /**
+         * occupancyHistogram[k] is the number of buckets holding k keys
+         */
+        public int[] occupancyHistogram() {
+            return occupancyHistogram.clone();
+        }
+
+        /**
+         * Pearson chi-square of the bucket counts against the uniform distribution, with tableSize - 1 degrees of freedom.
+         */
+        public double chiSquare() {
+            return chiSquare;
+        }
+
+        /**
+         * Chi-square normalized by its degrees of freedom, ~1 when the distribution is uniform.
+         */
+        public double normalizedChiSquare() {
+            return chiSquare / (tableSize - 1);
+        }
+
+        public int maxChainLength() {
+            return maxChainLength;
+        }
+
+        public int treeBins() {
+            return treeBins;
+        }
+
+        public double averageProbes() {
+            return keys == 0 ? 0 : (double) probes / keys;
+        }
+
+        /**
+         * Average probes of a successful lookup compared to a uniform hash, which gives 1 + load / 2. The tree bins
+         * count log2(chain) + 1 probes per node, the other bins are linear chains.
+         */
+        public double costFactor() {
+            if (keys == 0) {
+                return 1;
+            }
+            double load = (double) keys / tableSize;
+            return averageProbes() / (1 + load / 2);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("table: %7d | keys: %7d | distinct hashes: %7d | chi2/df: %10.2f | max chain: %5d | tree bins: %5d | avg probes: %8.2f | cost factor: %8.2f | histogram: %s",
+                    tableSize, keys, distinctHashes, normalizedChiSquare(), maxChainLength, treeBins, averageProbes(), costFactor(), histogramSummary());
+        }
+
+        private String histogramSummary() {
+            // the tail is summed up, we only care about long chains existing
+            int shown = Math.min(occupancyHistogram.length, TREEIFY_THRESHOLD);
+            int[] summary = Arrays.copyOf(occupancyHistogram, shown + 1);
+            summary[shown] = 0;
+            for (int i = shown; i < occupancyHistogram.length; i++) {
+                summary[shown] += occupancyHistogram[i];
+            }
+            return Arrays.toString(summary);
+        }
+    }
+
+    private static <T> void report(String name, List<T> keys, Function<T, Integer> hashFunction) {
+        HashQualityAnalyzer<T> analyzer = new HashQualityAnalyzer<>(hashFunction);
+        BucketStats resident = analyzer.analyzeResidentTable(keys);
+        System.out.println(name + (resident.costFactor() > DEFAULT_MAX_COST_FACTOR ? " -> REJECTED" : " -> OK"));
+        for (BucketStats stats : analyzer.analyze(keys)) {
+            System.out.println((stats.tableSize() == resident.tableSize() ? " * " : "   ") + stats);
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) {
+        List<HashCodeComplexity.Person> persons = KeyCorpus.names(HashCodeComplexity.Person::new);
+        for (int charsToHash = 0; charsToHash <= 6; charsToHash++) {
+            HashCodeComplexity.charsToHash = charsToHash;
+            report("HashCodeComplexity.Person, charsToHash=" + charsToHash, persons, HashCodeComplexity.Person::hashCode);
+        }
+
+        report("HashCodeBuilderBench.Person", KeyCorpus.names(HashCodeBuilderBench.Person::new), HashCodeBuilderBench.Person::hashCode);
+        report("HashCodeBuilderBench.PersonWithHashCodeBuilder", KeyCorpus.names(HashCodeBuilderBench.PersonWithHashCodeBuilder::new), HashCodeBuilderBench.PersonWithHashCodeBuilder::hashCode);
+        report("HashCodeBuilderBench.PersonWithHashCodeBuilder2", KeyCorpus.names(HashCodeBuilderBench.PersonWithHashCodeBuilder2::new), HashCodeBuilderBench.PersonWithHashCodeBuilder2::hashCode);
+        report("HashCodeBuilderBench.PersonWithReflectionHashCode", KeyCorpus.names(HashCodeBuilderBench.PersonWithReflectionHashCode::new), HashCodeBuilderBench.PersonWithReflectionHashCode::hashCode);
+    }
+}
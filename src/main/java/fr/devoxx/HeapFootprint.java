@@ -0,0 +1,61 @@
+package fr.devoxx;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Supplier;
+
+/**
+ * Rough retained heap measurement: used heap after full GCs, before and after building a structure.
+ * Good enough to compare data structures holding millions of entries, not to measure a single object.
+ */
+public class HeapFootprint {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    // keeps the measured structure reachable while the heap is measured
+    private static volatile Object retained;
+
+    public static long retainedBytes(Supplier<?> builder) {
+        long before = usedHeap();
+        retained = builder.get();
+        long after = usedHeap();
+        retained = null;
+        return Math.max(0, after - before);
+    }
+
+    public static double bytesPerEntry(Supplier<?> builder, int entries) {
+        return entries == 0 ? 0 : (double) retainedBytes(builder) / entries;
+    }
+
+    /**
+     * Time spent in GC by a full collection while the structure is reachable, i.e. the pause it costs to trace it.
+     */
+    public static long fullGcMillis(Supplier<?> builder) {
+        retained = builder.get();
+        usedHeap();
+        long before = gcMillis();
+        System.gc();
+        long pause = gcMillis() - before;
+        retained = null;
+        return pause;
+    }
+
+    static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    static long usedHeap() {
+        long used = Long.MAX_VALUE;
+        // a single System.gc() is not always enough to get a stable value
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,200 @@
+package fr.devoxx;
+
+/**
+ * Chained hash map that never rehashes all its entries at once, like the Redis dict.
+ * <p>
+ * When the size goes above the threshold a table twice as big is allocated, and each following put, get or remove
+ * moves {@link #REHASH_STEP} buckets from the old table to the new one. Until the old table is empty, lookups check
+ * both tables. The doubled table is migrated after (oldCapacity / REHASH_STEP) operations, well before the next
+ * threshold is reached. The allocation of the new array is still done in one go, but zeroing an array is much
+ * cheaper than rehashing every node into it.
+ */
+public class IncrementalResizeHashMap<K, V> {
+
+    static final int DEFAULT_CAPACITY = 16;
+    static final float LOAD_FACTOR = 0.75f;
+    static final int MAX_CAPACITY = 1 << 30;
+
+    // buckets migrated per operation
+    static final int REHASH_STEP = 4;
+
+    private Node<K, V>[] table;
+    // non null while rehashing, its buckets below rehashIndex are already migrated
+    private Node<K, V>[] oldTable;
+    private int rehashIndex;
+
+    private int size;
+    private int threshold;
+
+    public IncrementalResizeHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IncrementalResizeHashMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < initialCapacity && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        table = newTable(capacity);
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // same as HashMap.hash()
+    static int hash(Object key) {
+        int h;
+        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+    }
+
+    public V get(Object key) {
+        rehashStep();
+        Node<K, V> node = find(key, hash(key));
+        return node == null ? null : node.value;
+    }
+
+    public boolean containsKey(Object key) {
+        rehashStep();
+        return find(key, hash(key)) != null;
+    }
+
+    public V put(K key, V value) {
+        rehashStep();
+        int hash = hash(key);
+        Node<K, V> node = find(key, hash);
+        if (node != null) {
+            V previous = node.value;
+            node.value = value;
+            return previous;
+        }
+        // new entries always go to the new table
+        int index = hash & (table.length - 1);
+        table[index] = new Node<>(hash, key, value, table[index]);
+        if (++size > threshold) {
+            startResize();
+        }
+        return null;
+    }
+
+    public V remove(Object key) {
+        rehashStep();
+        int hash = hash(key);
+        V removed = null;
+        if (oldTable != null) {
+            removed = remove(oldTable, key, hash);
+        }
+        if (removed == null) {
+            removed = remove(table, key, hash);
+        }
+        return removed;
+    }
+
+    private V remove(Node<K, V>[] tab, Object key, int hash) {
+        int index = hash & (tab.length - 1);
+        Node<K, V> previous = null;
+        for (Node<K, V> node = tab[index]; node != null; previous = node, node = node.next) {
+            if (node.hash == hash && (node.key == key || (key != null && key.equals(node.key)))) {
+                if (previous == null) {
+                    tab[index] = node.next;
+                } else {
+                    previous.next = node.next;
+                }
+                size--;
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isRehashing() {
+        return oldTable != null;
+    }
+
+    public int capacity() {
+        return table.length;
+    }
+
+    private Node<K, V> find(Object key, int hash) {
+        if (oldTable != null) {
+            Node<K, V> node = find(oldTable, key, hash);
+            if (node != null) {
+                return node;
+            }
+        }
+        return find(table, key, hash);
+    }
+
+    private static <K, V> Node<K, V> find(Node<K, V>[] tab, Object key, int hash) {
+        for (Node<K, V> node = tab[hash & (tab.length - 1)]; node != null; node = node.next) {
+            if (node.hash == hash && (node.key == key || (key != null && key.equals(node.key)))) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void startResize() {
+        if (table.length == MAX_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        // should not happen as each put migrates REHASH_STEP buckets, but never drop the old table
+        while (oldTable != null) {
+            rehashStep();
+        }
+        oldTable = table;
+        rehashIndex = 0;
+        table = newTable(oldTable.length << 1);
+        threshold = (int) (table.length * LOAD_FACTOR);
+    }
+
+    private void rehashStep() {
+        if (oldTable == null) {
+            return;
+        }
+        int mask = table.length - 1;
+        int end = Math.min(rehashIndex + REHASH_STEP, oldTable.length);
+        for (; rehashIndex < end; rehashIndex++) {
+            Node<K, V> node = oldTable[rehashIndex];
+            oldTable[rehashIndex] = null;
+            while (node != null) {
+                Node<K, V> next = node.next;
+                int index = node.hash & mask;
+                node.next = table[index];
+                table[index] = node;
+                node = next;
+            }
+        }
+        if (rehashIndex == oldTable.length) {
+            oldTable = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newTable(int capacity) {
+        return (Node<K, V>[]) new Node<?, ?>[capacity];
+    }
+
+    static final class Node<K, V> {
+        final int hash;
+        final K key;
+        V value;
+        Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package fr.devoxx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs another JVM, or any command, to find out what it supports: its version, its compilers, Flight Recorder.
+ */
+public class JavaCommand {
+
+    /**
+     * @return stdout and stderr of the command, once it has exited
+     * @throws UncheckedIOException when the command can't be started
+     */
+    static String run(String... command) {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (InputStream in = process.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    output.write(buffer, 0, n);
+                }
+            }
+            process.waitFor();
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the version printed by java -version, java itself when there is none
+     */
+    static String version(String java) {
+        Matcher matcher = Pattern.compile("version \"([^\"]+)\"").matcher(run(java, "-version"));
+        return matcher.find() ? matcher.group(1) : java;
+    }
+}
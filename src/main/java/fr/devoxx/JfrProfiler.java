@@ -0,0 +1,106 @@
+package fr.devoxx;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.Result;
+
+/**
+ * Starts a Flight Recorder recording in each fork, dumped when the fork exits to
+ * results/jfr/&lt;benchmark&gt;-&lt;params&gt;-&lt;date&gt;.jfr, to look at the GC pauses and the allocation
+ * sites in Mission Control.
+ * <p>
+ * The forked JVM must have JFR: OpenJDK 8u262+ or 11+. It is checked on the JVM of each fork, which may not be the
+ * runner's (GcReport -Dzgc.jvm), by starting it once with a recording. Forks without JFR run without recording. The
+ * recording covers the whole fork, warmup included.
+ */
+public class JfrProfiler implements ExternalProfiler {
+
+    // fork JVM -> has JFR
+    private static final Map<String, Boolean> JFR_SUPPORT = new ConcurrentHashMap<>();
+
+    private File recording;
+
+    @Override
+    public String label() {
+        return "jfr";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Flight Recorder recording per fork";
+    }
+
+    @Override
+    public boolean checkSupport(List<String> msgs) {
+        // the forks may run on another JVM, see addJVMOptions()
+        return true;
+    }
+
+    static boolean hasFlightRecorder(String jvm) {
+        return JFR_SUPPORT.computeIfAbsent(jvm, java -> {
+            try {
+                return JavaCommand.run(java, "-XX:StartFlightRecording=settings=none", "-version").contains("Started recording");
+            } catch (UncheckedIOException e) {
+                // the fork will report it
+                return false;
+            }
+        });
+    }
+
+    @Override
+    public Collection<String> addJVMInvokeOptions(BenchmarkParams params) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<String> addJVMOptions(BenchmarkParams params) {
+        recording = null;
+        if (!hasFlightRecorder(params.getJvm())) {
+            System.out.println("Flight Recorder is not available in " + params.getJvm() + ", forks must run on OpenJDK 8u262+ or 11+, no recording");
+            return Collections.emptyList();
+        }
+        Path dir = Paths.get(System.getProperty(ResultsStore.RESULTS_DIR_PROPERTY, ResultsStore.DEFAULT_RESULTS_DIR), "jfr");
+        dir.toFile().mkdirs();
+        StringBuilder name = new StringBuilder(params.getBenchmark().replaceFirst("^.*\\.([^.]+\\.[^.]+)$", "$1"));
+        for (String key : params.getParamsKeys()) {
+            name.append('-').append(params.getParam(key).replaceAll("[^A-Za-z0-9_.]+", "_"));
+        }
+        name.append('-').append(new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date())).append(".jfr");
+        recording = dir.resolve(name.toString()).toFile();
+        return Collections.singletonList("-XX:StartFlightRecording=settings=profile,dumponexit=true,filename=" + recording);
+    }
+
+    @Override
+    public void beforeTrial(BenchmarkParams benchmarkParams) {
+    }
+
+    @Override
+    public Collection<? extends Result<?>> afterTrial(BenchmarkResult br, long pid, File stdOut, File stdErr) {
+        if (recording != null) {
+            System.out.println("JFR recording: " + recording + (recording.exists() ? "" : " (not written)"));
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean allowPrintOut() {
+        return true;
+    }
+
+    @Override
+    public boolean allowPrintErr() {
+        return true;
+    }
+}
@@ -0,0 +1,73 @@
+package fr.devoxx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Where the benchmarks get their keys from, shared so that they all see the same ones.
+ * <ul>
+ *     <li>names.txt, read from the classpath so that it also works from the benchmarks jar</li>
+ *     <li>a {@link KeyCorpusGenerator} corpus of any size, generated in memory</li>
+ *     <li>a {@link MappedKeyCorpus} file, by path or classpath resource, decoded lazily</li>
+ * </ul>
+ */
+public class KeyCorpus {
+
+    static final String NAMES_FILE = "names.txt";
+    // JMH doesn't accept an empty default value for a @Param
+    static final String NO_FILE = "none";
+
+    public static List<String> names() {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(NAMES_FILE)) {
+            if (in == null) {
+                throw new IllegalStateException(NAMES_FILE + " not found in the classpath");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return reader.lines().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <T> List<T> names(Function<String, T> map) {
+        return map(names(), map);
+    }
+
+    /**
+     * Keys for the benchmark params corpusFile / corpusSize.
+     *
+     * @param corpusSize 0 for all the keys, otherwise the number of keys to generate, or to take from the file
+     * @param corpusFile a {@link MappedKeyCorpus} file or resource, {@link #NO_FILE} for names.txt or a generated corpus
+     */
+    public static List<String> load(int corpusSize, String corpusFile) {
+        if (corpusFile != null && !corpusFile.isEmpty() && !NO_FILE.equals(corpusFile)) {
+            try {
+                List<String> keys = MappedKeyCorpus.load(corpusFile).asList();
+                return corpusSize == 0 || corpusSize >= keys.size() ? keys : keys.subList(0, corpusSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (corpusSize == 0) {
+            return names();
+        }
+        return new KeyCorpusGenerator().generate(corpusSize);
+    }
+
+    public static <T> List<T> load(int corpusSize, String corpusFile, Function<String, T> map) {
+        return map(load(corpusSize, corpusFile), map);
+    }
+
+    private static <T> List<T> map(List<String> keys, Function<String, T> map) {
+        return keys.stream()
+                .map(map)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,192 @@
+package fr.devoxx;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic generator of "First Last" keys, to go beyond the 999 names of names.txt.
+ * <p>
+ * The first and last names of names.txt are the vocabulary. Last names are made by gluing the beginning of a last
+ * name to the end of another one, sometimes double-barrelled, which gives names that look like the real ones.
+ * <ul>
+ *     <li>duplicateRate: probability for a key to be a copy of a key generated before it</li>
+ *     <li>prefixSkew: Zipf exponent of the first name distribution, 0 is uniform, the higher the more keys start with
+ *     the same few first names</li>
+ * </ul>
+ * The key at a given index only depends on the seed and the parameters, so a corpus can be streamed without being
+ * kept in memory, and the same corpus is generated on every machine.
+ */
+public class KeyCorpusGenerator {
+
+    static final long DEFAULT_SEED = 42;
+    static final double DEFAULT_DUPLICATE_RATE = 0.05;
+    static final double DEFAULT_PREFIX_SKEW = 1.0;
+
+    // approximate number of keys for a working set fitting in each level, a key with its Person and String is ~100 bytes
+    static final int L1_SIZED = 300;
+    static final int L2_SIZED = 10_000;
+    static final int LLC_SIZED = 300_000;
+    static final int DRAM_SIZED = 10_000_000;
+    // for .param("corpusSize", ...)
+    static final String[] CACHE_LEVEL_SIZES = {
+            String.valueOf(L1_SIZED), String.valueOf(L2_SIZED), String.valueOf(LLC_SIZED), String.valueOf(DRAM_SIZED)};
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_BARRELLED_RATE = 0.1;
+
+    private final long seed;
+    private final double duplicateRate;
+    private final String[] firstNames;
+    private final String[] lastNames;
+    private final double[] firstNameCdf;
+
+    public KeyCorpusGenerator() {
+        this(DEFAULT_SEED, DEFAULT_DUPLICATE_RATE, DEFAULT_PREFIX_SKEW);
+    }
+
+    public KeyCorpusGenerator(long seed, double duplicateRate, double prefixSkew) {
+        if (duplicateRate < 0 || duplicateRate >= 1) {
+            throw new IllegalArgumentException("duplicateRate must be in [0, 1[: " + duplicateRate);
+        }
+        if (prefixSkew < 0) {
+            throw new IllegalArgumentException("prefixSkew must be positive: " + prefixSkew);
+        }
+        this.seed = seed;
+        this.duplicateRate = duplicateRate;
+
+        Set<String> firsts = new LinkedHashSet<>();
+        Set<String> lasts = new LinkedHashSet<>();
+        for (String name : KeyCorpus.names()) {
+            int space = name.indexOf(' ');
+            if (space > 0 && space < name.length() - 1) {
+                firsts.add(name.substring(0, space));
+                lasts.add(name.substring(space + 1));
+            }
+        }
+        this.firstNames = firsts.toArray(new String[0]);
+        this.lastNames = lasts.toArray(new String[0]);
+
+        this.firstNameCdf = new double[firstNames.length];
+        double total = 0;
+        for (int rank = 0; rank < firstNames.length; rank++) {
+            total += 1 / Math.pow(rank + 1, prefixSkew);
+            firstNameCdf[rank] = total;
+        }
+        for (int rank = 0; rank < firstNames.length; rank++) {
+            firstNameCdf[rank] /= total;
+        }
+    }
+
+    /**
+     * The index-th key of the corpus, duplicates included.
+     */
+    public String keyAt(long index) {
+        // a duplicate is a copy of an earlier key, the chain ends quickly as duplicateRate < 1
+        while (index > 0) {
+            long r = mix(seed ^ (index * GOLDEN));
+            if (uniform(r) >= duplicateRate) {
+                break;
+            }
+            index = Long.remainderUnsigned(mix(r), index);
+        }
+        return uniqueKey(index);
+    }
+
+    private String uniqueKey(long index) {
+        long r1 = mix(seed + index * GOLDEN);
+        long r2 = mix(r1);
+        long r3 = mix(r2);
+        String first = firstNames[zipf(uniform(r1))];
+        String last = lastName(r2);
+        if (uniform(r3) < DOUBLE_BARRELLED_RATE) {
+            last = last + '-' + lastName(mix(r3));
+        }
+        return first + ' ' + last;
+    }
+
+    // beginning of a last name glued to the end of another one
+    private String lastName(long r) {
+        String head = lastNames[(int) Long.remainderUnsigned(r, lastNames.length)];
+        long r2 = mix(r);
+        String tail = lastNames[(int) Long.remainderUnsigned(r2, lastNames.length)];
+        int headLength = 1 + (int) Long.remainderUnsigned(mix(r2), head.length());
+        int tailStart = (int) Long.remainderUnsigned(mix(r2 + 1), tail.length());
+        return head.substring(0, headLength) + tail.substring(tailStart).toLowerCase(Locale.ROOT);
+    }
+
+    private int zipf(double u) {
+        int low = 0;
+        int high = firstNameCdf.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (firstNameCdf[middle] < u) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // SplitMix64 finalizer
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double uniform(long r) {
+        return (r >>> 11) * 0x1.0p-53;
+    }
+
+    public Stream<String> stream(long size) {
+        return LongStream.range(0, size).mapToObj(this::keyAt);
+    }
+
+    public List<String> generate(int size) {
+        List<String> keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(keyAt(i));
+        }
+        return keys;
+    }
+
+    /**
+     * One key per line, like names.txt.
+     */
+    public void writeTo(Path file, long size) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            Iterator<String> keys = stream(size).iterator();
+            while (keys.hasNext()) {
+                writer.write(keys.next());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * args: file size [seed [duplicateRate [prefixSkew]]]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: KeyCorpusGenerator file size [seed [duplicateRate [prefixSkew]]]");
+            System.exit(1);
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        double duplicateRate = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_DUPLICATE_RATE;
+        double prefixSkew = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_PREFIX_SKEW;
+        new KeyCorpusGenerator(seed, duplicateRate, prefixSkew).writeTo(Paths.get(args[0]), Long.parseLong(args[1]));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * {@link HashMapResize} over load factors and initial capacity policies, to pick a load factor from data.
+ * <p>
+ * A lower load factor means shorter chains and a bigger table: main() measures the retained heap of each map and
+ * prints, per insertCount, the Pareto frontier of time vs memory, i.e. the configurations no other one beats on both.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(1)
+@Fork(1)
+public class LoadFactorSweep {
+
+    @Param({"24576", "24577", "196608", "196609", "3145728", "3145729"})
+    public int insertCount;
+
+    @Param({"0.5", "0.75", "1.0", "1.5"})
+    public float loadFactor;
+
+    /**
+     * default: new HashMap(16, loadFactor), exact: {@link MapInspector#initialCapacity(int, float)},
+     * headroom: the power of two above exact
+     */
+    @Param({"default", "exact", "headroom"})
+    public String sizing;
+
+    private List<Integer> integers;
+    private HashMap<Integer, Integer> map;
+
+    @Setup
+    public void prepare_map() {
+        integers = new ArrayList<>(insertCount);
+        for (int i = 0; i < insertCount; i++) {
+            integers.add(i);
+        }
+        map = build(integers, initialCapacity(sizing, insertCount, loadFactor), loadFactor);
+    }
+
+    static int initialCapacity(String sizing, int insertCount, float loadFactor) {
+        switch (sizing) {
+            case "default":
+                return MapInspector.DEFAULT_CAPACITY;
+            case "exact":
+                return MapInspector.initialCapacity(insertCount, loadFactor);
+            case "headroom":
+                return MapInspector.tableSizeFor(MapInspector.initialCapacity(insertCount, loadFactor)) * 2;
+            default:
+                throw new IllegalArgumentException("unknown sizing: " + sizing);
+        }
+    }
+
+    static HashMap<Integer, Integer> build(List<Integer> integers, int initialCapacity, float loadFactor) {
+        HashMap<Integer, Integer> map = new HashMap<>(initialCapacity, loadFactor);
+        for (int i = 0; i < integers.size(); i++) {
+            Integer integer = integers.get(i);
+            map.put(integer, integer);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) {
+        blackhole.consume(build(integers, initialCapacity(sizing, insertCount, loadFactor), loadFactor));
+    }
+
+    @Benchmark
+    public int get_all() {
+        int sum = 0;
+        for (int i = 0; i < integers.size(); i++) {
+            sum += map.get(integers.get(i));
+        }
+        return sum;
+    }
+
+    static class Point {
+
+        final String benchmark;
+        final int insertCount;
+        final String configuration;
+        final double score;
+        final long bytes;
+
+        Point(String benchmark, int insertCount, String configuration, double score, long bytes) {
+            this.benchmark = benchmark;
+            this.insertCount = insertCount;
+            this.configuration = configuration;
+            this.score = score;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Points sorted by bytes, the frontier being the ones faster than all the smaller ones.
+     */
+    static List<Point> paretoFrontier(List<Point> points) {
+        List<Point> sorted = new ArrayList<>(points);
+        sorted.sort(Comparator.<Point>comparingLong(p -> p.bytes).thenComparingDouble(p -> p.score));
+        List<Point> frontier = new ArrayList<>();
+        double best = Double.MAX_VALUE;
+        for (Point point : sorted) {
+            if (point.score < best) {
+                frontier.add(point);
+                best = point.score;
+            }
+        }
+        return frontier;
+    }
+
+    static void printPareto(Collection<RunResult> results) {
+        Map<String, List<Point>> groups = new LinkedHashMap<>();
+        Map<String, Long> retained = new HashMap<>();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            benchmark = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            int insertCount = Integer.parseInt(result.getParams().getParam("insertCount"));
+            float loadFactor = Float.parseFloat(result.getParams().getParam("loadFactor"));
+            String sizing = result.getParams().getParam("sizing");
+            String configuration = "loadFactor=" + loadFactor + " sizing=" + sizing;
+            // same map for both benchmarks, measured once
+            long bytes = retained.computeIfAbsent(insertCount + " " + configuration, key -> {
+                List<Integer> integers = new ArrayList<>(insertCount);
+                for (int i = 0; i < insertCount; i++) {
+                    integers.add(i);
+                }
+                return HeapFootprint.retainedBytes(() -> build(integers, initialCapacity(sizing, insertCount, loadFactor), loadFactor));
+            });
+            groups.computeIfAbsent(benchmark + " " + insertCount, key -> new ArrayList<>())
+                    .add(new Point(benchmark, insertCount, configuration, result.getPrimaryResult().getScore(), bytes));
+        }
+
+        for (Map.Entry<String, List<Point>> group : groups.entrySet()) {
+            System.out.println();
+            System.out.println(group.getKey() + " (* on the Pareto frontier)");
+            List<Point> frontier = paretoFrontier(group.getValue());
+            List<Point> points = new ArrayList<>(group.getValue());
+            points.sort(Comparator.comparingLong(p -> p.bytes));
+            for (Point point : points) {
+                System.out.println(String.format("%s %-35s %12.3f ms %14d bytes %8.1f bytes/entry",
+                        frontier.contains(point) ? "*" : " ", point.configuration, point.score, point.bytes, (double) point.bytes / point.insertCount));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + LoadFactorSweep.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .jvmArgs("-Xmx4g", "-Xms4g")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        printPareto(ResultsStore.run(opt));
+    }
+}
@@ -0,0 +1,170 @@
+package fr.devoxx;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free set with open addressing and linear probing, with a fixed capacity.
+ * <p>
+ * A slot is claimed once and for all by a CAS on its key, then add and remove only flip a presence flag with a CAS,
+ * like the keys of Cliff Click's NonBlockingHashMap. Removed keys keep their slot, so the capacity has to be sized for
+ * the number of distinct keys ever added, and there is no resize: an add that finds no slot throws
+ * {@link IllegalStateException}. Null elements are not supported.
+ */
+public class LockFreeHashSet<E> extends AbstractSet<E> {
+
+    private static final int ABSENT = 0;
+    private static final int PRESENT = 1;
+
+    private final AtomicReferenceArray<E> keys;
+    private final AtomicIntegerArray states;
+    private final LongAdder size = new LongAdder();
+    private final int mask;
+
+    /**
+     * @param maxDistinctKeys number of distinct keys that can be added over the lifetime of the set
+     */
+    public LockFreeHashSet(int maxDistinctKeys) {
+        int capacity = IntIntOpenHashMap.capacityFor(maxDistinctKeys, IntIntOpenHashMap.DEFAULT_LOAD_FACTOR);
+        this.keys = new AtomicReferenceArray<>(capacity);
+        this.states = new AtomicIntegerArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    private static int hash(Object o) {
+        int h = o.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // index of the slot holding o, or -1
+    private int find(Object o) {
+        int start = hash(o) & mask;
+        int i = start;
+        do {
+            E k = keys.get(i);
+            if (k == null) {
+                return -1;
+            }
+            if (k == o || k.equals(o)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        } while (i != start);
+        return -1;
+    }
+
+    // index of the slot holding e, claiming a free one if needed
+    private int findOrClaim(E e) {
+        int start = hash(e) & mask;
+        int i = start;
+        do {
+            E k = keys.get(i);
+            if (k == null) {
+                if (keys.compareAndSet(i, null, e)) {
+                    return i;
+                }
+                // lost the race, the winner may have claimed it for the same key
+                k = keys.get(i);
+            }
+            if (k == e || k.equals(e)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        } while (i != start);
+        throw new IllegalStateException("set is full, capacity: " + keys.length());
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        int i = findOrClaim(e);
+        if (states.compareAndSet(i, ABSENT, PRESENT)) {
+            size.increment();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        int i = find(o);
+        if (i >= 0 && states.compareAndSet(i, PRESENT, ABSENT)) {
+            size.decrement();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        int i = find(o);
+        return i >= 0 && states.get(i) == PRESENT;
+    }
+
+    /**
+     * Not atomic with concurrent updates.
+     */
+    @Override
+    public int size() {
+        return (int) Math.max(0, size.sum());
+    }
+
+    public int capacity() {
+        return keys.length();
+    }
+
+    /**
+     * Weakly consistent, like the iterators of java.util.concurrent.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index = advance(0);
+            private int last = -1;
+
+            private int advance(int from) {
+                int i = from;
+                while (i < keys.length() && (keys.get(i) == null || states.get(i) != PRESENT)) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < keys.length();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = index;
+                index = advance(index + 1);
+                return keys.get(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                LockFreeHashSet.this.remove(keys.get(last));
+                last = -1;
+            }
+        };
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * contains() on a pre-built HashSet, where the other benchmarks only measure building it.
+ * <p>
+ * Half of the distinct keys go into the set, the other half are the misses. Each lookup is a new Person wrapping a
+ * copy of the name, so that a hit runs hashCode() and a real equals() down to the chars, unless keys=identical.
+ * The score is per lookup.
+ */
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBench {
+
+    static final int LOOKUPS = 1 << 16;
+
+    /**
+     * The Person classes of {@link HashCodeBuilderBench}, {@link CachedHashCodeBench} and {@link HashCodeComplexity}
+     * (chars_to_hash_N)
+     */
+    @Param({"simple", "hash_code_builder", "hash_code_builder2", "reflection", "equals_builder", "reflection_equals",
+            "generated", "generated_reflection", "lazy_cached", "chars_to_hash_1", "chars_to_hash_6"})
+    public String variant;
+
+    @Param({"1.0", "0.95", "0.5"})
+    public double hitRatio;
+
+    /**
+     * Zipf exponent of the key popularity, 0 for uniform lookups
+     */
+    @Param({"0", "1.0"})
+    public double skew;
+
+    /**
+     * equal: lookups with copies of the keys, identical: with the keys themselves, equals() stops at ==
+     */
+    @Param({"equal", "identical"})
+    public String keys;
+
+    /**
+     * 0 for names.txt, or the number of generated keys, see {@link KeyCorpusGenerator}
+     */
+    @Param({"0"})
+    public int corpusSize = 0;
+
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    private HashSet<Object> set;
+    private Object[] lookups;
+
+    @Setup
+    public void prepare_lookups() {
+        Function<String, Object> person = person(variant);
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(KeyCorpus.load(corpusSize, corpusFile)));
+        List<String> presentNames = new ArrayList<>();
+        List<String> absentNames = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            (i % 2 == 0 ? presentNames : absentNames).add(names.get(i));
+        }
+        List<Object> present = new ArrayList<>();
+        for (String name : presentNames) {
+            present.add(person.apply(name));
+        }
+        set = new HashSet<>(present);
+
+        SplittableRandom random = new SplittableRandom(KeyCorpusGenerator.DEFAULT_SEED);
+        double[] presentCdf = zipfCdf(presentNames.size(), skew);
+        double[] absentCdf = zipfCdf(absentNames.size(), skew);
+        lookups = new Object[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (random.nextDouble() < hitRatio || absentNames.isEmpty()) {
+                int rank = rank(presentCdf, random.nextDouble());
+                lookups[i] = keys.equals("identical") ? present.get(rank) : person.apply(new String(presentNames.get(rank)));
+            } else {
+                lookups[i] = person.apply(new String(absentNames.get(rank(absentCdf, random.nextDouble()))));
+            }
+        }
+    }
+
+    static Function<String, Object> person(String variant) {
+        if (variant.startsWith("chars_to_hash_")) {
+            HashCodeComplexity.charsToHash = Integer.parseInt(variant.substring("chars_to_hash_".length()));
+            return HashCodeComplexity.Person::new;
+        }
+        switch (variant) {
+            case "simple":
+                return HashCodeBuilderBench.Person::new;
+            case "hash_code_builder":
+                return HashCodeBuilderBench.PersonWithHashCodeBuilder::new;
+            case "hash_code_builder2":
+                return HashCodeBuilderBench.PersonWithHashCodeBuilder2::new;
+            case "reflection":
+                return HashCodeBuilderBench.PersonWithReflectionHashCode::new;
+            case "equals_builder":
+                return HashCodeBuilderBench.PersonWithEqualsBuilder::new;
+            case "reflection_equals":
+                return HashCodeBuilderBench.PersonWithReflectionEquals::new;
+            case "equals_builder19":
+                return HashCodeBuilderBench.PersonWithEqualsBuilder19::new;
+            case "generated":
+                return HashCodeBuilderBench.PersonWithGeneratedHashCode::new;
+            case "generated_reflection_equals":
+                return HashCodeBuilderBench.PersonWithGeneratedHashCodeReflectionEquals::new;
+            case "generated_reflection":
+                return HashCodeBuilderBench.PersonWithGeneratedReflectionHashCode::new;
+            case "lazy_cached":
+                return CachedHashCodeBench.PersonWithLazyHashCode::new;
+            default:
+                throw new IllegalArgumentException("unknown variant: " + variant);
+        }
+    }
+
+    static double[] zipfCdf(int size, double skew) {
+        double[] cdf = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            total += 1 / Math.pow(rank + 1, skew);
+            cdf[rank] = total;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cdf[rank] /= total;
+        }
+        return cdf;
+    }
+
+    static int rank(double[] cdf, double u) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cdf[middle] < u) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int contains() {
+        int found = 0;
+        for (Object key : lookups) {
+            if (set.contains(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + LookupBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+    }
+}
@@ -0,0 +1,338 @@
+package fr.devoxx;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link FindHashMapResizingThresholds} for any map: capacity, resize threshold and bins of a HashMap, LinkedHashMap,
+ * HashSet, LinkedHashSet, ConcurrentHashMap or IdentityHashMap, read from their private fields.
+ * <p>
+ * On JDK 16+ the fields are only readable with --add-opens java.base/java.util=ALL-UNNAMED (and
+ * java.base/java.util.concurrent=ALL-UNNAMED). Without, the capacity and threshold are estimated from the size,
+ * assuming the map grew from its default capacity, and the bins are unknown.
+ * <p>
+ * {@link #plan(int, float)} gives the initial capacity that holds N entries without resizing, and what it costs.
+ */
+public class MapInspector {
+
+    // same values as in HashMap
+    static final int DEFAULT_CAPACITY = 16;
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+    static final int IDENTITY_DEFAULT_CAPACITY = 32;
+
+    public static Report inspect(Object mapOrSet) {
+        try {
+            return read(mapOrSet);
+        } catch (ReflectiveOperationException e) {
+            return estimate(mapOrSet);
+        } catch (RuntimeException e) {
+            // InaccessibleObjectException on JDK 16+, a class that doesn't exist on JDK 8
+            if (e.getClass().getName().equals("java.lang.reflect.InaccessibleObjectException")) {
+                return estimate(mapOrSet);
+            }
+            throw e;
+        }
+    }
+
+    private static Report read(Object o) throws ReflectiveOperationException {
+        if (o instanceof HashSet) {
+            // LinkedHashSet too, it is backed by a LinkedHashMap
+            Report map = read(field(HashSet.class, "map").get(o));
+            return new Report(o.getClass(), map.size, map.capacity, map.threshold, map.loadFactor, map.chainLengths, map.treeBins, false);
+        }
+        if (o instanceof HashMap) {
+            Object[] table = (Object[]) field(HashMap.class, "table").get(o);
+            int threshold = field(HashMap.class, "threshold").getInt(o);
+            float loadFactor = field(HashMap.class, "loadFactor").getFloat(o);
+            Field next = field(Class.forName("java.util.HashMap$Node"), "next");
+            int[] chains = new int[table == null ? 0 : table.length];
+            int treeBins = 0;
+            for (int i = 0; i < chains.length; i++) {
+                if (table[i] != null && table[i].getClass().getSimpleName().equals("TreeNode")) {
+                    treeBins++;
+                }
+                // tree bins keep the next links too
+                for (Object node = table[i]; node != null; node = next.get(node)) {
+                    chains[i]++;
+                }
+            }
+            // before the first put, threshold holds the initial capacity
+            return new Report(o.getClass(), ((Map<?, ?>) o).size(), chains.length, table == null ? 0 : threshold, loadFactor, chains, treeBins, false);
+        }
+        if (o instanceof ConcurrentHashMap) {
+            Object[] table = (Object[]) field(ConcurrentHashMap.class, "table").get(o);
+            int sizeCtl = field(ConcurrentHashMap.class, "sizeCtl").getInt(o);
+            Field next = field(Class.forName("java.util.concurrent.ConcurrentHashMap$Node"), "next");
+            Class<?> treeBinType = Class.forName("java.util.concurrent.ConcurrentHashMap$TreeBin");
+            Field first = field(treeBinType, "first");
+            int[] chains = new int[table == null ? 0 : table.length];
+            int treeBins = 0;
+            for (int i = 0; i < chains.length; i++) {
+                Object node = table[i];
+                if (node != null && node.getClass() == treeBinType) {
+                    treeBins++;
+                    node = first.get(node);
+                }
+                for (; node != null; node = next.get(node)) {
+                    chains[i]++;
+                }
+            }
+            // sizeCtl is the next resize size once the table exists, negative while resizing
+            return new Report(o.getClass(), ((Map<?, ?>) o).size(), chains.length, table == null || sizeCtl < 0 ? 0 : sizeCtl,
+                    DEFAULT_LOAD_FACTOR, chains, treeBins, false);
+        }
+        if (o instanceof IdentityHashMap) {
+            // linear probing over [key, value, key, value...], the chains are the runs of occupied slots
+            Object[] table = (Object[]) field(IdentityHashMap.class, "table").get(o);
+            int capacity = table.length / 2;
+            int[] chains = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                if (table[i * 2] != null && (i == 0 || table[i * 2 - 2] == null)) {
+                    int run = 0;
+                    for (int j = i; table[j * 2] != null && run < capacity; j = (j + 1) % capacity) {
+                        run++;
+                    }
+                    chains[i] = run;
+                }
+            }
+            return new Report(o.getClass(), ((Map<?, ?>) o).size(), capacity, identityThreshold(capacity), 2f / 3, chains, 0, false);
+        }
+        throw new IllegalArgumentException("not an inspectable map: " + o.getClass().getName());
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * The capacity the map would have if it grew from its default capacity to its current size.
+     */
+    static Report estimate(Object o) {
+        if (!(o instanceof HashMap || o instanceof HashSet || o instanceof ConcurrentHashMap || o instanceof IdentityHashMap)) {
+            throw new IllegalArgumentException("not an inspectable map: " + o.getClass().getName());
+        }
+        int size = o instanceof Map ? ((Map<?, ?>) o).size() : ((HashSet<?>) o).size();
+        if (o instanceof IdentityHashMap) {
+            int capacity = IDENTITY_DEFAULT_CAPACITY;
+            while (size > identityThreshold(capacity) && capacity < MAXIMUM_CAPACITY) {
+                capacity <<= 1;
+            }
+            return new Report(o.getClass(), size, capacity, identityThreshold(capacity), 2f / 3, null, -1, true);
+        }
+        int capacity = size == 0 ? 0 : DEFAULT_CAPACITY;
+        // ConcurrentHashMap resizes when reaching the threshold, HashMap when going over it
+        int extra = o instanceof ConcurrentHashMap ? 1 : 0;
+        while (capacity > 0 && size + extra > (int) (capacity * DEFAULT_LOAD_FACTOR) && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        return new Report(o.getClass(), size, capacity, (int) (capacity * DEFAULT_LOAD_FACTOR), DEFAULT_LOAD_FACTOR, null, -1, true);
+    }
+
+    // IdentityHashMap resizes when 3 * size > 2 * capacity
+    static int identityThreshold(int capacity) {
+        return capacity * 2 / 3;
+    }
+
+    // same as HashMap.tableSizeFor()
+    static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1);
+        return n < 0 ? 1 : n >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * The argument to give to new HashMap(initialCapacity, loadFactor) so that expectedSize entries fit without resizing.
+     * ConcurrentHashMap and IdentityHashMap take the expected size directly, with new ConcurrentHashMap(expectedSize,
+     * loadFactor, 1) and new IdentityHashMap(expectedSize).
+     */
+    public static int initialCapacity(int expectedSize, float loadFactor) {
+        return (int) Math.min(MAXIMUM_CAPACITY, (long) Math.ceil(expectedSize / (double) loadFactor));
+    }
+
+    public static Plan plan(int expectedSize, float loadFactor) {
+        int initialCapacity = initialCapacity(expectedSize, loadFactor);
+        int tableLength = tableSizeFor(initialCapacity);
+        return new Plan(expectedSize, loadFactor, initialCapacity, tableLength, (int) (tableLength * loadFactor));
+    }
+
+    public static class Report {
+
+        private final Class<?> type;
+        private final int size;
+        private final int capacity;
+        private final int threshold;
+        private final float loadFactor;
+        private final int[] chainLengths;
+        private final int treeBins;
+        private final boolean estimated;
+
+        Report(Class<?> type, int size, int capacity, int threshold, float loadFactor, int[] chainLengths, int treeBins, boolean estimated) {
+            this.type = type;
+            this.size = size;
+            this.capacity = capacity;
+            this.threshold = threshold;
+            this.loadFactor = loadFactor;
+            this.chainLengths = chainLengths;
+            this.treeBins = treeBins;
+            this.estimated = estimated;
+        }
+
+        public Class<?> type() {
+            return type;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Number of bins, the table length for all but IdentityHashMap which holds 2 slots per entry
+         */
+        public int capacity() {
+            return capacity;
+        }
+
+        /**
+         * Size above which the next put resizes the table, 0 if the table isn't allocated yet
+         */
+        public int threshold() {
+            return threshold;
+        }
+
+        public float loadFactor() {
+            return loadFactor;
+        }
+
+        /**
+         * Keys per bin, or for IdentityHashMap the length of the run of occupied slots starting at each slot.
+         * Null when estimated.
+         */
+        public int[] chainLengths() {
+            return chainLengths == null ? null : chainLengths.clone();
+        }
+
+        public int maxChainLength() {
+            int max = -1;
+            if (chainLengths != null) {
+                for (int chain : chainLengths) {
+                    max = Math.max(max, chain);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * -1 when estimated
+         */
+        public int treeBins() {
+            return treeBins;
+        }
+
+        /**
+         * true when the private fields couldn't be read and the numbers come from the size only
+         */
+        public boolean estimated() {
+            return estimated;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-38s size: %9d | capacity: %9d | threshold: %9d | load factor: %4.2f | max chain: %5d | tree bins: %5d%s",
+                    type.getName(), size, capacity, threshold, loadFactor, maxChainLength(), treeBins, estimated ? " (estimated)" : "");
+        }
+    }
+
+    public static class Plan {
+
+        private final int expectedSize;
+        private final float loadFactor;
+        private final int initialCapacity;
+        private final int tableLength;
+        private final int threshold;
+
+        Plan(int expectedSize, float loadFactor, int initialCapacity, int tableLength, int threshold) {
+            this.expectedSize = expectedSize;
+            this.loadFactor = loadFactor;
+            this.initialCapacity = initialCapacity;
+            this.tableLength = tableLength;
+            this.threshold = threshold;
+        }
+
+        public int initialCapacity() {
+            return initialCapacity;
+        }
+
+        public int tableLength() {
+            return tableLength;
+        }
+
+        public int threshold() {
+            return threshold;
+        }
+
+        public long tableBytes() {
+            long bytes = ObjectLayout.ARRAY_HEADER_BYTES + (long) tableLength * ObjectLayout.REFERENCE_BYTES;
+            return (bytes + ObjectLayout.OBJECT_ALIGNMENT - 1) / ObjectLayout.OBJECT_ALIGNMENT * ObjectLayout.OBJECT_ALIGNMENT;
+        }
+
+        /**
+         * Table and nodes of a HashMap, or with entryType "java.util.LinkedHashMap$Entry" of a LinkedHashMap.
+         * The keys and values are not counted.
+         */
+        public long bytes(String entryType) {
+            try {
+                return tableBytes() + (long) expectedSize * ObjectLayout.instanceSize(Class.forName(entryType));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        public long hashMapBytes() {
+            return bytes("java.util.HashMap$Node");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10d %5.2f %16d %12d %10d %12d %14d %16d", expectedSize, loadFactor, initialCapacity, tableLength, threshold,
+                    tableBytes(), hashMapBytes(), bytes("java.util.LinkedHashMap$Entry"));
+        }
+    }
+
+    private static void printInspections(int entries) {
+        Map<Integer, Integer> hashMap = new HashMap<>();
+        Map<Integer, Integer> linkedHashMap = new LinkedHashMap<>();
+        HashSet<Integer> hashSet = new HashSet<>();
+        Map<Integer, Integer> concurrentHashMap = new ConcurrentHashMap<>();
+        Map<Integer, Integer> identityHashMap = new IdentityHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            hashMap.put(i, i);
+            linkedHashMap.put(i, i);
+            hashSet.add(i);
+            concurrentHashMap.put(i, i);
+            identityHashMap.put(i, i);
+        }
+        for (Object o : new Object[]{hashMap, linkedHashMap, hashSet, concurrentHashMap, identityHashMap}) {
+            System.out.println(inspect(o));
+        }
+    }
+
+    public static void main(String[] args) {
+        printInspections(args.length == 0 ? 100_000 : Integer.parseInt(args[0]));
+        System.out.println();
+
+        System.out.println(String.format("%10s %5s %16s %12s %10s %12s %14s %16s", "entries", "load", "initialCapacity", "table", "threshold",
+                "table bytes", "HashMap bytes", "LinkedHashMap b."));
+        for (String insertCount : new String[]{"24576", "24577", "196608", "196609", "3145728", "3145729"}) {
+            for (float loadFactor : new float[]{0.5f, 0.75f, 1f}) {
+                System.out.println(plan(Integer.parseInt(insertCount), loadFactor));
+            }
+        }
+    }
+}
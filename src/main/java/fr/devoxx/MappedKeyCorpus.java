@@ -0,0 +1,248 @@
+package fr.devoxx;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Key corpus read from a memory-mapped binary file, nothing is copied on the heap until a key is asked for.
+ * <p>
+ * File layout, big endian:
+ * <pre>
+ * magic (int) | key count (long) | offset of each key (long * count) | for each key: UTF-8 length (int) + UTF-8 bytes
+ * </pre>
+ * The offsets make {@link #key(long)} O(1) without scanning the file at startup. Files bigger than 2GB are mapped in
+ * overlapping segments so that a key never straddles two of them.
+ */
+public class MappedKeyCorpus {
+
+    static final int MAGIC = 0x4B455953; // "KEYS"
+    static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    static final int MAX_KEY_BYTES = 64 * 1024;
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+    // a key and its length always fit in the overlap
+    private static final long SEGMENT_OVERLAP = MAX_KEY_BYTES + Integer.BYTES;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    private MappedKeyCorpus(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long fileSize = channel.size();
+            int count = (int) ((fileSize + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+            segments = new MappedByteBuffer[Math.max(1, count)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT_BYTES;
+                long length = Math.min(SEGMENT_BYTES + SEGMENT_OVERLAP, fileSize - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+            }
+        }
+        if (segments[0].capacity() < HEADER_BYTES || segments[0].getInt(0) != MAGIC) {
+            throw new IOException("not a key corpus file: " + file);
+        }
+        size = segments[0].getLong(Integer.BYTES);
+    }
+
+    public static MappedKeyCorpus open(Path file) throws IOException {
+        return new MappedKeyCorpus(file);
+    }
+
+    /**
+     * A resource inside a jar can't be mapped, it is copied once to a temporary file.
+     */
+    public static MappedKeyCorpus fromClasspath(String resource) throws IOException {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("resource not found: " + resource);
+            }
+            Path copy = Files.createTempFile("corpus", ".keys");
+            copy.toFile().deleteOnExit();
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+            return open(copy);
+        }
+    }
+
+    /**
+     * An existing file path, or else a classpath resource.
+     */
+    public static MappedKeyCorpus load(String location) throws IOException {
+        Path path = Paths.get(location);
+        return Files.isRegularFile(path) ? open(path) : fromClasspath(location);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Position in the file of the UTF-8 bytes of the key.
+     */
+    public long offset(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return getLong(HEADER_BYTES + index * Long.BYTES) + Integer.BYTES;
+    }
+
+    /**
+     * Number of UTF-8 bytes of the key.
+     */
+    public int length(long index) {
+        return getInt(offset(index) - Integer.BYTES);
+    }
+
+    public byte byteAt(long offset) {
+        return segments[(int) (offset / SEGMENT_BYTES)].get((int) (offset % SEGMENT_BYTES));
+    }
+
+    /**
+     * Zero copy, read only view on the UTF-8 bytes of the key.
+     */
+    public ByteBuffer bytes(long index) {
+        long offset = offset(index);
+        int length = getInt(offset - Integer.BYTES);
+        ByteBuffer view = segments[(int) (offset / SEGMENT_BYTES)].duplicate();
+        int position = (int) (offset % SEGMENT_BYTES);
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+
+    /**
+     * Same value as {@link String#hashCode()} for ASCII keys, computed on the mapped bytes.
+     */
+    public int hash(long index) {
+        long offset = offset(index);
+        int length = getInt(offset - Integer.BYTES);
+        ByteBuffer segment = segments[(int) (offset / SEGMENT_BYTES)];
+        int position = (int) (offset % SEGMENT_BYTES);
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + (segment.get(position + i) & 0xFF);
+        }
+        return h;
+    }
+
+    public String key(long index) {
+        ByteBuffer bytes = bytes(index);
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Keys decoded on each access, the list itself holds nothing.
+     */
+    public List<String> asList() {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("too many keys for a List: " + size);
+        }
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return key(index);
+            }
+
+            @Override
+            public int size() {
+                return (int) size;
+            }
+        };
+    }
+
+    private long getLong(long offset) {
+        return segments[(int) (offset / SEGMENT_BYTES)].getLong((int) (offset % SEGMENT_BYTES));
+    }
+
+    private int getInt(long offset) {
+        return segments[(int) (offset / SEGMENT_BYTES)].getInt((int) (offset % SEGMENT_BYTES));
+    }
+
+    /**
+     * Streams the keys to a corpus file, keeping only the current key in memory.
+     */
+    public static void write(Path file, Iterator<String> keys, long count) throws IOException {
+        long dataStart = HEADER_BYTES + count * Long.BYTES;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putLong(count).flip();
+            channel.write(header, 0);
+
+            try (DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(new ChannelOutputStream(channel, HEADER_BYTES)));
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new ChannelOutputStream(channel, dataStart)))) {
+                long position = dataStart;
+                for (long i = 0; i < count; i++) {
+                    if (!keys.hasNext()) {
+                        throw new IllegalArgumentException("only " + i + " keys, expected " + count);
+                    }
+                    byte[] bytes = keys.next().getBytes(StandardCharsets.UTF_8);
+                    if (bytes.length > MAX_KEY_BYTES) {
+                        throw new IllegalArgumentException("key too long: " + bytes.length + " bytes");
+                    }
+                    offsets.writeLong(position);
+                    data.writeInt(bytes.length);
+                    data.write(bytes);
+                    position += Integer.BYTES + bytes.length;
+                }
+            }
+        }
+    }
+
+    // positional writes, so the offsets and the data can be written at the same time
+    private static class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        ChannelOutputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /**
+     * Writes a generated corpus, args: file size [seed [duplicateRate [prefixSkew]]]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: MappedKeyCorpus file size [seed [duplicateRate [prefixSkew]]]");
+            System.exit(1);
+        }
+        long size = Long.parseLong(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : KeyCorpusGenerator.DEFAULT_SEED;
+        double duplicateRate = args.length > 3 ? Double.parseDouble(args[3]) : KeyCorpusGenerator.DEFAULT_DUPLICATE_RATE;
+        double prefixSkew = args.length > 4 ? Double.parseDouble(args[4]) : KeyCorpusGenerator.DEFAULT_PREFIX_SKEW;
+        KeyCorpusGenerator generator = new KeyCorpusGenerator(seed, duplicateRate, prefixSkew);
+        write(Paths.get(args[0]), generator.stream(size).iterator(), size);
+    }
+}
@@ -0,0 +1,86 @@
+package fr.devoxx;
+
+import java.util.Arrays;
+
+/**
+ * Dedup dictionary: each distinct String is kept once and gets a dense int id, so that keys made of names that
+ * repeat a lot can hold ints instead of Strings.
+ * <p>
+ * A HashMap&lt;String, Integer&gt; would cost a node and a boxed id per name, here it is a slot of an int[] open
+ * addressed table pointing into the names array. Not thread safe, ids are never reclaimed.
+ */
+public class NameDictionary {
+
+    private static final float LOAD_FACTOR = IntIntOpenHashMap.DEFAULT_LOAD_FACTOR;
+
+    private String[] names = new String[16];
+    private int size;
+    // id + 1 of the name hashed to each slot, 0 for a free slot
+    private int[] table = new int[IntIntOpenHashMap.capacityFor(16, LOAD_FACTOR)];
+
+    /**
+     * @return the id of name, assigned if it is new
+     */
+    public int id(String name) {
+        int mask = table.length - 1;
+        for (int i = IntIntOpenHashMap.mix(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int id = table[i] - 1;
+            if (id < 0) {
+                return add(name, i);
+            }
+            if (names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return the id of name, or -1 if it was never added, for lookups that shouldn't grow the dictionary
+     */
+    public int existingId(String name) {
+        int mask = table.length - 1;
+        for (int i = IntIntOpenHashMap.mix(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int id = table[i] - 1;
+            if (id < 0 || names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    private int add(String name, int slot) {
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = name;
+        table[slot] = id + 1;
+        if (size > (int) (table.length * LOAD_FACTOR)) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int i = IntIntOpenHashMap.mix(names[id].hashCode()) & mask;
+            while (newTable[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newTable[i] = id + 1;
+        }
+        table = newTable;
+    }
+
+    public String name(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("no name for id " + id);
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,113 @@
+package fr.devoxx;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Minimal JOL: field offsets and shallow instance size, read from Unsafe on the running JVM, so compressed oops and
+ * field packing are taken into account.
+ * <p>
+ * The only class of the project using sun.misc.Unsafe, and by reflection: a direct reference makes javac print
+ * "internal proprietary API" warnings that can't be suppressed. It is public in jdk.unsupported on JDK 9+, no
+ * --add-opens needed.
+ */
+public class ObjectLayout {
+
+    static final int OBJECT_ALIGNMENT = 8;
+
+    private static final Object UNSAFE;
+    private static final Method OBJECT_FIELD_OFFSET;
+    /**
+     * Offset of the first element of an Object[], the header plus the array length
+     */
+    static final int ARRAY_HEADER_BYTES;
+    /**
+     * 4 with compressed oops, 8 without
+     */
+    static final int REFERENCE_BYTES;
+
+    static {
+        try {
+            Class<?> unsafeType = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeType.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = field.get(null);
+            OBJECT_FIELD_OFFSET = unsafeType.getMethod("objectFieldOffset", Field.class);
+            ARRAY_HEADER_BYTES = (int) unsafeType.getMethod("arrayBaseOffset", Class.class).invoke(UNSAFE, Object[].class);
+            REFERENCE_BYTES = (int) unsafeType.getMethod("arrayIndexScale", Class.class).invoke(UNSAFE, Object[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static long offset(Field field) {
+        try {
+            return (long) OBJECT_FIELD_OFFSET.invoke(UNSAFE, field);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("no offset for " + field, e.getCause());
+        }
+    }
+
+    /**
+     * Shallow size of an instance, aligned like the JVM does.
+     */
+    public static long instanceSize(Class<?> type) {
+        long end = ARRAY_HEADER_BYTES - Integer.BYTES; // header size, the array length excluded
+        for (Field field : instanceFields(type)) {
+            end = Math.max(end, offset(field) + sizeOf(field.getType()));
+        }
+        return (end + OBJECT_ALIGNMENT - 1) / OBJECT_ALIGNMENT * OBJECT_ALIGNMENT;
+    }
+
+    /**
+     * Fields by offset, like the JOL ClassLayout printout.
+     */
+    public static String layout(Class<?> type) {
+        StringBuilder sb = new StringBuilder(type.getName()).append(" object internals:\n");
+        sb.append(String.format("%6s %5s %-10s %s%n", "OFFSET", "SIZE", "TYPE", "NAME"));
+        sb.append(String.format("%6d %5d %-10s %s%n", 0, ARRAY_HEADER_BYTES - Integer.BYTES, "", "(object header)"));
+        List<Field> fields = instanceFields(type);
+        fields.sort(Comparator.comparingLong(ObjectLayout::offset));
+        for (Field field : fields) {
+            sb.append(String.format("%6d %5d %-10s %s.%s%n", offset(field), sizeOf(field.getType()),
+                    field.getType().getSimpleName(), field.getDeclaringClass().getSimpleName(), field.getName()));
+        }
+        sb.append("Instance size: ").append(instanceSize(type)).append(" bytes\n");
+        return sb.toString();
+    }
+
+    private static List<Field> instanceFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_BYTES;
+    }
+}
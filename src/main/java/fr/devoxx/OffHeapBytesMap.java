@@ -0,0 +1,291 @@
+package fr.devoxx;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map from byte slices (UTF-8 keys) to long values, stored in direct buffers: nothing on the heap per entry.
+ * <p>
+ * The table is open addressed with linear probing, a slot is (hash int, key length int, key address long, value long).
+ * The key bytes are copied to an append-only arena made of direct chunks, a key never spans two chunks.
+ * The hash is kept in the slot so that a resize never reads the keys and most mismatches are found without
+ * comparing bytes. Removal is not supported, {@link #clear()} resets the map while keeping the memory.
+ */
+public class OffHeapBytesMap {
+
+    static final int SLOT_BYTES = 24;
+    private static final int HASH = 0;
+    private static final int LENGTH = 4;
+    private static final int ADDRESS = 8;
+    private static final int VALUE = 16;
+
+    static final int CHUNK_BITS = 22;
+    static final int CHUNK_BYTES = 1 << CHUNK_BITS;
+
+    // address 0 marks a free slot, the first chunk starts after it
+    private static final long FIRST_ADDRESS = 8;
+
+    private final float loadFactor;
+    private final int chunkBytes;
+
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private int threshold;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long arenaEnd = FIRST_ADDRESS;
+    // bulk puts need a position, kept on a duplicate of the chunk being filled
+    private ByteBuffer writer;
+    private int writerIndex;
+
+    public OffHeapBytesMap() {
+        this(0);
+    }
+
+    public OffHeapBytesMap(int expectedSize) {
+        this(expectedSize, IntIntOpenHashMap.DEFAULT_LOAD_FACTOR, CHUNK_BYTES);
+    }
+
+    OffHeapBytesMap(int expectedSize, float loadFactor, int chunkBytes) {
+        this.loadFactor = loadFactor;
+        this.chunkBytes = Math.min(chunkBytes, CHUNK_BYTES);
+        allocate(IntIntOpenHashMap.capacityFor(expectedSize, loadFactor));
+    }
+
+    static int hash(byte[] key, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + key[i];
+        }
+        return IntIntOpenHashMap.mix(h);
+    }
+
+    static int hash(ByteBuffer key) {
+        int h = 0;
+        for (int i = key.position(); i < key.limit(); i++) {
+            h = 31 * h + key.get(i);
+        }
+        return IntIntOpenHashMap.mix(h);
+    }
+
+    public boolean add(byte[] key) {
+        return add(key, 0, key.length);
+    }
+
+    public boolean add(byte[] key, int offset, int length) {
+        return putIfAbsent(key, offset, length, 0);
+    }
+
+    public boolean add(String key) {
+        return add(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true if the key was absent and has been inserted
+     */
+    public boolean putIfAbsent(byte[] key, int offset, int length, long value) {
+        int h = hash(key, offset, length);
+        int mask = capacity - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int slot = i * SLOT_BYTES;
+            long address = slots.getLong(slot + ADDRESS);
+            if (address == 0) {
+                slots.putInt(slot + HASH, h);
+                slots.putInt(slot + LENGTH, length);
+                slots.putLong(slot + ADDRESS, store(key, offset, length));
+                slots.putLong(slot + VALUE, value);
+                if (++size > threshold) {
+                    rehash(capacity << 1);
+                }
+                return true;
+            }
+            if (slots.getInt(slot + HASH) == h && keyEquals(slot, key, offset, length)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value, or missingValue
+     */
+    public long put(byte[] key, int offset, int length, long value, long missingValue) {
+        int slot = find(key, offset, length);
+        if (slot >= 0) {
+            long previous = slots.getLong(slot + VALUE);
+            slots.putLong(slot + VALUE, value);
+            return previous;
+        }
+        putIfAbsent(key, offset, length, value);
+        return missingValue;
+    }
+
+    public boolean contains(byte[] key, int offset, int length) {
+        return find(key, offset, length) >= 0;
+    }
+
+    public boolean contains(byte[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    public boolean contains(String key) {
+        return contains(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long get(byte[] key, int offset, int length, long missingValue) {
+        int slot = find(key, offset, length);
+        return slot < 0 ? missingValue : slots.getLong(slot + VALUE);
+    }
+
+    /**
+     * For keys that are already off heap, like the {@link MappedKeyCorpus#bytes(long)} views.
+     */
+    public boolean contains(ByteBuffer key) {
+        int h = hash(key);
+        int mask = capacity - 1;
+        int length = key.remaining();
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int slot = i * SLOT_BYTES;
+            long address = slots.getLong(slot + ADDRESS);
+            if (address == 0) {
+                return false;
+            }
+            if (slots.getInt(slot + HASH) == h && slots.getInt(slot + LENGTH) == length) {
+                ByteBuffer chunk = chunk(address);
+                int start = chunkOffset(address);
+                boolean equal = true;
+                for (int j = 0; j < length && equal; j++) {
+                    equal = chunk.get(start + j) == key.get(key.position() + j);
+                }
+                if (equal) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private int find(byte[] key, int offset, int length) {
+        int h = hash(key, offset, length);
+        int mask = capacity - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int slot = i * SLOT_BYTES;
+            if (slots.getLong(slot + ADDRESS) == 0) {
+                return -1;
+            }
+            if (slots.getInt(slot + HASH) == h && keyEquals(slot, key, offset, length)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(int slot, byte[] key, int offset, int length) {
+        if (slots.getInt(slot + LENGTH) != length) {
+            return false;
+        }
+        long address = slots.getLong(slot + ADDRESS);
+        ByteBuffer chunk = chunk(address);
+        int start = chunkOffset(address);
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(start + i) != key[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // copies the key to the arena and returns its address
+    private long store(byte[] key, int offset, int length) {
+        if (length > chunkBytes) {
+            throw new IllegalArgumentException("key too long: " + length + " bytes");
+        }
+        int index = (int) (arenaEnd >>> CHUNK_BITS);
+        int position = chunkOffset(arenaEnd);
+        if (index == chunks.size() || position + length > chunkBytes) {
+            if (index < chunks.size()) {
+                // doesn't fit in the current chunk, go to the next one
+                index++;
+                position = 0;
+            }
+            if (index == chunks.size()) {
+                chunks.add(ByteBuffer.allocateDirect(chunkBytes));
+            }
+        }
+        if (writer == null || writerIndex != index) {
+            writer = chunks.get(index).duplicate();
+            writerIndex = index;
+        }
+        writer.position(position);
+        writer.put(key, offset, length);
+        long address = ((long) index << CHUNK_BITS) | position;
+        arenaEnd = address + length;
+        return address;
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks.get((int) (address >>> CHUNK_BITS));
+    }
+
+    private static int chunkOffset(long address) {
+        return (int) (address & (CHUNK_BYTES - 1));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Direct memory held by the table and the key arena.
+     */
+    public long offHeapBytes() {
+        return (long) capacity * SLOT_BYTES + (long) chunks.size() * chunkBytes;
+    }
+
+    /**
+     * Empties the map, the table and the arena are kept for reuse.
+     */
+    public void clear() {
+        for (int slot = 0; slot < capacity * SLOT_BYTES; slot += SLOT_BYTES) {
+            slots.putLong(slot + ADDRESS, 0);
+        }
+        size = 0;
+        arenaEnd = FIRST_ADDRESS;
+    }
+
+    private void allocate(int newCapacity) {
+        if ((long) newCapacity * SLOT_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalStateException("map is full: " + size);
+        }
+        slots = ByteBuffer.allocateDirect(newCapacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        capacity = newCapacity;
+        threshold = (int) (newCapacity * loadFactor);
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity * SLOT_BYTES; oldSlot += SLOT_BYTES) {
+            long address = oldSlots.getLong(oldSlot + ADDRESS);
+            if (address != 0) {
+                int h = oldSlots.getInt(oldSlot + HASH);
+                int i = h & mask;
+                while (slots.getLong(i * SLOT_BYTES + ADDRESS) != 0) {
+                    i = (i + 1) & mask;
+                }
+                int slot = i * SLOT_BYTES;
+                slots.putInt(slot + HASH, h);
+                slots.putInt(slot + LENGTH, oldSlots.getInt(oldSlot + LENGTH));
+                slots.putLong(slot + ADDRESS, address);
+                slots.putLong(slot + VALUE, oldSlots.getLong(oldSlot + VALUE));
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * {@link OffHeapBytesMap} against the HashSet of {@link HashCodeBuilderBench.Person} of {@link HashCodeBuilderBench#simpleHashCode}.
+ * <p>
+ * The off heap keys come from a single byte[] holding all the UTF-8 keys, so the input doesn't allocate either.
+ * The off heap set is cleared and refilled on each invocation instead of being reallocated, direct memory is only
+ * released by the GC. main() adds the gc profiler and prints the resident memory and full GC pause of both.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(1)
+@Fork(1)
+public class OffHeapSetBench {
+
+    @Param({"0"})
+    public int corpusSize = 0;
+
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    private List<HashCodeBuilderBench.Person> persons;
+
+    private Utf8Keys keys;
+    private OffHeapBytesMap offHeapSet;
+
+    @Setup
+    public void load_keys() {
+        List<String> names = KeyCorpus.load(corpusSize, corpusFile);
+        persons = KeyCorpus.load(corpusSize, corpusFile, HashCodeBuilderBench.Person::new);
+        keys = new Utf8Keys(names);
+        offHeapSet = new OffHeapBytesMap(keys.size());
+    }
+
+    @Benchmark
+    public void simpleHashCode(Blackhole blackhole) {
+        HashSet<HashCodeBuilderBench.Person> set = new HashSet<>(persons.size());
+        for (HashCodeBuilderBench.Person person : persons) {
+            set.add(person);
+        }
+        blackhole.consume(set);
+    }
+
+    @Benchmark
+    public void offHeapSet(Blackhole blackhole) {
+        OffHeapBytesMap set = offHeapSet;
+        set.clear();
+        Utf8Keys keys = this.keys;
+        for (int i = 0; i < keys.size(); i++) {
+            set.add(keys.bytes, keys.offsets[i], keys.offsets[i + 1] - keys.offsets[i]);
+        }
+        blackhole.consume(set);
+    }
+
+    /**
+     * All the keys encoded in one array, key i is bytes[offsets[i] .. offsets[i + 1][
+     */
+    static class Utf8Keys {
+
+        final byte[] bytes;
+        final int[] offsets;
+
+        Utf8Keys(List<String> keys) {
+            offsets = new int[keys.size() + 1];
+            byte[][] encoded = new byte[keys.size()][];
+            for (int i = 0; i < keys.size(); i++) {
+                encoded[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+                offsets[i + 1] = offsets[i] + encoded[i].length;
+            }
+            bytes = new byte[offsets[keys.size()]];
+            for (int i = 0; i < encoded.length; i++) {
+                System.arraycopy(encoded[i], 0, bytes, offsets[i], encoded[i].length);
+            }
+        }
+
+        int size() {
+            return offsets.length - 1;
+        }
+    }
+
+    static void printFootprint(int corpusSize) {
+        Utf8Keys keys = new Utf8Keys(KeyCorpus.load(corpusSize, KeyCorpus.NO_FILE));
+        Supplier<HashSet<HashCodeBuilderBench.Person>> hashSet = () -> {
+            HashSet<HashCodeBuilderBench.Person> set = new HashSet<>();
+            for (int i = 0; i < keys.size(); i++) {
+                set.add(new HashCodeBuilderBench.Person(new String(keys.bytes, keys.offsets[i], keys.offsets[i + 1] - keys.offsets[i], StandardCharsets.UTF_8)));
+            }
+            return set;
+        };
+        Supplier<OffHeapBytesMap> offHeapSet = () -> {
+            OffHeapBytesMap set = new OffHeapBytesMap();
+            for (int i = 0; i < keys.size(); i++) {
+                set.add(keys.bytes, keys.offsets[i], keys.offsets[i + 1] - keys.offsets[i]);
+            }
+            return set;
+        };
+
+        OffHeapBytesMap offHeap = offHeapSet.get();
+
+        System.out.println();
+        System.out.println("keys: " + keys.size());
+        System.out.println(String.format("%-20s %15s %15s %15s", "", "heap bytes", "direct bytes", "full gc ms"));
+        System.out.println(String.format("%-20s %15d %15d %15d", "HashSet<Person>",
+                HeapFootprint.retainedBytes(hashSet), 0, HeapFootprint.fullGcMillis(hashSet)));
+        System.out.println(String.format("%-20s %15d %15d %15d", "OffHeapBytesMap",
+                HeapFootprint.retainedBytes(offHeapSet), offHeap.offHeapBytes(), HeapFootprint.fullGcMillis(() -> offHeap)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + OffHeapSetBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .param("corpusSize", "0", String.valueOf(KeyCorpusGenerator.LLC_SIZED), String.valueOf(KeyCorpusGenerator.DRAM_SIZED))
+                .jvmArgs("-Xmx4g", "-Xms4g")
+                .addProfiler(GCProfiler.class)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+        printFootprint(KeyCorpusGenerator.LLC_SIZED);
+    }
+}
@@ -0,0 +1,220 @@
+package fr.devoxx;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read only hash set bulk loaded on all the cores, for sets built once from a big corpus and then only queried.
+ * <p>
+ * The table is open addressed and cut into 2^p ranges, and a key goes to the range given by the p high bits of its
+ * mixed hash. Its probe sequence wraps inside the range, so the ranges are independent and each one is filled by its
+ * own task. The build runs in 4 parallel passes, none of them taking a lock:
+ * <ol>
+ *     <li>hash the keys</li>
+ *     <li>count the keys of each range, per chunk of keys</li>
+ *     <li>scatter the key indexes by range</li>
+ *     <li>insert each range, duplicates are dropped</li>
+ * </ol>
+ * The table is allocated once, after the counting, big enough for the fullest range. Null keys aren't supported.
+ */
+public class ParallelHashSet<E> extends AbstractSet<E> {
+
+    static final float LOAD_FACTOR = IntIntOpenHashMap.DEFAULT_LOAD_FACTOR;
+    static final int MIN_RANGE_CAPACITY = 2;
+
+    private final Object[] keys;
+    private final int[] hashes;
+    private final int tableBits;
+    private final int rangeMask;
+    private final int size;
+
+    private ParallelHashSet(Object[] keys, int[] hashes, int tableBits, int rangeBits, int size) {
+        this.keys = keys;
+        this.hashes = hashes;
+        this.tableBits = tableBits;
+        this.rangeMask = (1 << rangeBits) - 1;
+        this.size = size;
+    }
+
+    public static <E> ParallelHashSet<E> build(Collection<? extends E> keys) {
+        return build(keys.toArray(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    public static <E> ParallelHashSet<E> build(Stream<? extends E> keys) {
+        return build(keys.toArray(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param parallelism the expected number of threads, more ranges and chunks than that are created to balance them
+     */
+    static <E> ParallelHashSet<E> build(Object[] keys, int parallelism) {
+        int n = keys.length;
+        int[] hashes = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> hashes[i] = hash(keys[i]));
+
+        int partitionBits = Math.min(16, 32 - Integer.numberOfLeadingZeros(Math.max(1, parallelism * 8) - 1));
+        int chunks = Math.max(1, Math.min(n / 1024, parallelism * 4));
+        int chunkSize = (n + chunks - 1) / chunks;
+
+        int[][] counts;
+        int maxCount;
+        while (true) {
+            int partitions = 1 << partitionBits;
+            int shift = 32 - partitionBits;
+            counts = new int[chunks][];
+            int[][] chunkCounts = counts;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int[] count = new int[partitions];
+                for (int i = chunk * chunkSize; i < Math.min(n, (chunk + 1) * chunkSize); i++) {
+                    count[partitionOf(hashes[i], shift)]++;
+                }
+                chunkCounts[chunk] = count;
+            });
+            maxCount = 0;
+            for (int partition = 0; partition < partitions; partition++) {
+                int total = 0;
+                for (int[] count : counts) {
+                    total += count[partition];
+                }
+                maxCount = Math.max(maxCount, total);
+            }
+            // all the ranges are sized for the fullest one: with a skewed hash, or few keys, that's a lot of empty
+            // slots, fewer ranges are used until the table is at most twice the size of a single range table
+            if (partitionBits == 0 || (long) rangeCapacity(maxCount) << partitionBits <= 2L * rangeCapacity(n)) {
+                break;
+            }
+            partitionBits--;
+        }
+
+        int partitions = 1 << partitionBits;
+        int shift = 32 - partitionBits;
+        // start[chunk][partition] is where the chunk writes its first index of the partition
+        int[][] start = new int[chunks][partitions];
+        int[] partitionStart = new int[partitions + 1];
+        int offset = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            partitionStart[partition] = offset;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                start[chunk][partition] = offset;
+                offset += counts[chunk][partition];
+            }
+        }
+        partitionStart[partitions] = offset;
+        int[] order = new int[n];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int[] next = start[chunk];
+            for (int i = chunk * chunkSize; i < Math.min(n, (chunk + 1) * chunkSize); i++) {
+                order[next[partitionOf(hashes[i], shift)]++] = i;
+            }
+        });
+
+        int rangeCapacity = rangeCapacity(maxCount);
+        int rangeBits = Integer.numberOfTrailingZeros(rangeCapacity);
+        if (partitionBits + rangeBits > 30) {
+            throw new IllegalArgumentException("too many keys: " + n);
+        }
+        int tableBits = partitionBits + rangeBits;
+        Object[] table = new Object[1 << tableBits];
+        int[] tableHashes = new int[1 << tableBits];
+        int rangeMask = rangeCapacity - 1;
+        int size = IntStream.range(0, partitions).parallel().map(partition -> {
+            int base = partition << rangeBits;
+            int inserted = 0;
+            for (int j = partitionStart[partition]; j < partitionStart[partition + 1]; j++) {
+                int i = order[j];
+                int h = hashes[i];
+                for (int slot = (h >>> (32 - tableBits)) & rangeMask; ; slot = (slot + 1) & rangeMask) {
+                    Object key = table[base + slot];
+                    if (key == null) {
+                        table[base + slot] = keys[i];
+                        tableHashes[base + slot] = h;
+                        inserted++;
+                        break;
+                    }
+                    if (tableHashes[base + slot] == h && key.equals(keys[i])) {
+                        break;
+                    }
+                }
+            }
+            return inserted;
+        }).sum();
+        return new ParallelHashSet<>(table, tableHashes, tableBits, rangeBits, size);
+    }
+
+    private static int rangeCapacity(int keys) {
+        return Math.max(MIN_RANGE_CAPACITY, IntIntOpenHashMap.capacityFor(keys, LOAD_FACTOR));
+    }
+
+    static int hash(Object key) {
+        // the high bits pick the range, they have to be mixed
+        return IntIntOpenHashMap.mix(key.hashCode());
+    }
+
+    private static int partitionOf(int hash, int shift) {
+        return shift == 32 ? 0 : hash >>> shift;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        int h = hash(o);
+        int index = h >>> (32 - tableBits);
+        int base = index & ~rangeMask;
+        for (int slot = index & rangeMask; ; slot = (slot + 1) & rangeMask) {
+            Object key = keys[base + slot];
+            if (key == null) {
+                return false;
+            }
+            if (hashes[base + slot] == h && key.equals(o)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            public E next() {
+                if (next >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+                E key = (E) keys[next];
+                next = advance(next + 1);
+                return key;
+            }
+        };
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * {@link PerfectHashSet} against a HashSet of the same Strings, for a key set that never changes like names.txt.
+ * <p>
+ * Half of the distinct keys go into the sets, the other half are the misses. The lookups are copied again before each
+ * invocation, like keys read from a file or a request: HashSet computes their hashCode() as the perfect hash does,
+ * instead of reading the one String cached at the previous invocation. lookup is per
+ * key, build is the construction from the keys, load_from_disk reads the keys from a text file into a HashSet or the
+ * saved PerfectHashSet. The setup checks that the perfect hash finds each key at its own slot and none of the misses.
+ * main() also prints the retained heap of both and the size of the saved perfect hash.
+ */
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PerfectHashBench {
+
+    static final int LOOKUPS = LookupBench.LOOKUPS;
+
+    @Param({"hash_set", "perfect_hash"})
+    public String structure;
+
+    /**
+     * 0 for names.txt, or the number of generated keys, see {@link KeyCorpusGenerator}
+     */
+    @Param({"0"})
+    public int corpusSize = 0;
+
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    private List<String> present;
+    private List<String> absent;
+    private Set<String> set;
+    private Path textFile;
+    private Path perfectHashFile;
+
+    @Setup
+    public void prepare_sets() throws IOException {
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(KeyCorpus.load(corpusSize, corpusFile)));
+        present = new ArrayList<>();
+        absent = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            (i % 2 == 0 ? present : absent).add(names.get(i));
+        }
+        set = build(structure, present);
+        verify(present, absent);
+
+        textFile = Files.createTempFile("keys", ".txt");
+        Files.write(textFile, present, StandardCharsets.UTF_8);
+        perfectHashFile = Files.createTempFile("keys", ".mphs");
+        PerfectHashSet.build(present).save(perfectHashFile);
+    }
+
+    @TearDown
+    public void delete_files() throws IOException {
+        Files.deleteIfExists(textFile);
+        Files.deleteIfExists(perfectHashFile);
+    }
+
+    static Set<String> build(String structure, List<String> keys) {
+        switch (structure) {
+            case "hash_set":
+                return new HashSet<>(keys);
+            case "perfect_hash":
+                return PerfectHashSet.build(keys);
+            default:
+                throw new IllegalArgumentException("unknown structure: " + structure);
+        }
+    }
+
+    /**
+     * The perfect hash must find each present key at its own slot, and none of the absent ones.
+     */
+    static void verify(List<String> present, List<String> absent) {
+        PerfectHashSet perfectHash = PerfectHashSet.build(present);
+        if (perfectHash.size() != present.size()) {
+            throw new IllegalStateException("size " + perfectHash.size() + " for " + present.size() + " keys");
+        }
+        boolean[] used = new boolean[present.size()];
+        for (String key : present) {
+            int index = perfectHash.index(new String(key));
+            if (index < 0 || used[index] || !perfectHash.key(index).equals(key)) {
+                throw new IllegalStateException("wrong index " + index + " for " + key);
+            }
+            used[index] = true;
+        }
+        for (String key : absent) {
+            if (perfectHash.contains(key)) {
+                throw new IllegalStateException("absent key found: " + key);
+            }
+        }
+    }
+
+    /**
+     * The keys of lookup(), in their own state so that build and load_from_disk don't run once per hitRatio.
+     */
+    @State(Scope.Benchmark)
+    public static class Lookups {
+
+        @Param({"1.0", "0.5"})
+        public double hitRatio;
+
+        private char[][] chars;
+        private String[] keys;
+
+        @Setup
+        public void prepare_lookups(PerfectHashBench bench) {
+            SplittableRandom random = new SplittableRandom(KeyCorpusGenerator.DEFAULT_SEED);
+            chars = new char[LOOKUPS][];
+            keys = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                List<String> from = random.nextDouble() < hitRatio || bench.absent.isEmpty() ? bench.present : bench.absent;
+                chars[i] = from.get(random.nextInt(from.size())).toCharArray();
+            }
+        }
+
+        // an invocation is LOOKUPS lookups, long enough for a setup per invocation
+        @Setup(Level.Invocation)
+        public void copy_keys() {
+            for (int i = 0; i < LOOKUPS; i++) {
+                // new String(String) would share the cached hashCode()
+                keys[i] = new String(chars[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup(Lookups lookups) {
+        Set<String> set = this.set;
+        int found = 0;
+        for (String key : lookups.keys) {
+            if (set.contains(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Set<String> build() {
+        return build(structure, present);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Set<String> load_from_disk() throws IOException {
+        switch (structure) {
+            case "hash_set":
+                return new HashSet<>(Files.readAllLines(textFile, StandardCharsets.UTF_8));
+            case "perfect_hash":
+                return PerfectHashSet.load(perfectHashFile);
+            default:
+                throw new IllegalArgumentException("unknown structure: " + structure);
+        }
+    }
+
+    static void printFootprint(int corpusSize) {
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(KeyCorpus.load(corpusSize, KeyCorpus.NO_FILE)));
+        // the Strings are counted in both, a HashSet without its keys is of little use
+        Supplier<Set<String>> hashSet = () -> {
+            Set<String> set = new HashSet<>();
+            for (String key : keys) {
+                set.add(new String(key));
+            }
+            return set;
+        };
+        Supplier<Set<String>> perfectHash = () -> PerfectHashSet.build(keys);
+
+        long textBytes = 0;
+        for (String key : keys) {
+            textBytes += key.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        System.out.println();
+        System.out.println("keys: " + keys.size());
+        System.out.println(String.format("%-20s %15s %15s %15s", "", "heap bytes", "bytes/key", "file bytes"));
+        long hashSetBytes = HeapFootprint.retainedBytes(hashSet);
+        System.out.println(String.format("%-20s %15d %15.1f %15d", "HashSet<String>",
+                hashSetBytes, (double) hashSetBytes / keys.size(), textBytes));
+        long perfectHashBytes = HeapFootprint.retainedBytes(perfectHash);
+        System.out.println(String.format("%-20s %15d %15.1f %15d", "PerfectHashSet",
+                perfectHashBytes, (double) perfectHashBytes / keys.size(), PerfectHashSet.build(keys).serializedBytes()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + PerfectHashBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .param("corpusSize", "0", String.valueOf(KeyCorpusGenerator.LLC_SIZED))
+                .jvmArgs("-Xmx2g", "-Xms2g")
+                .mode(Mode.AverageTime)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+        printFootprint(0);
+        printFootprint(KeyCorpusGenerator.LLC_SIZED);
+    }
+}
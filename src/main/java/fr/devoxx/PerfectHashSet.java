@@ -0,0 +1,357 @@
+package fr.devoxx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Read only set of Strings over a minimal perfect hash: n keys, n slots, no collision, so a lookup is a single
+ * comparison with the key of its slot.
+ * <p>
+ * Hash and displace (CHD): the keys are split in buckets of 4 on average by their hash, and the buckets, biggest
+ * first, look for a pilot value that sends all their keys to free slots, slot = f(hash ^ pilot). A lookup reads the
+ * pilot of its bucket, then the key of its slot. The keys are stored in slot order as UTF-8 bytes, which is also the
+ * file layout, big endian:
+ * <pre>
+ * magic (int) | seed (long) | key count (int) | bucket count (int) | pilots (int * buckets)
+ *             | offset of each key and end offset (int * (count + 1)) | UTF-8 bytes
+ * </pre>
+ * The hash is the String.hashCode() loop on 64 bits with a seed, computed at each lookup where String caches its
+ * hashCode(). Duplicates are dropped, and keys with unpaired surrogates are rejected: UTF-8 can't tell them from the
+ * same key with a '?'.
+ */
+public class PerfectHashSet extends AbstractSet<String> {
+
+    static final int MAGIC = 0x4D504853; // "MPHS"
+    static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    static final int AVERAGE_BUCKET_SIZE = 4;
+    static final int MAX_SEEDS = 100;
+
+    private final long seed;
+    private final int[] pilots;
+    private final int[] offsets;
+    private final byte[] data;
+
+    private PerfectHashSet(long seed, int[] pilots, int[] offsets, byte[] data) {
+        this.seed = seed;
+        this.pilots = pilots;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    public static PerfectHashSet build(Collection<String> keys) {
+        String[] distinct = new LinkedHashSet<>(keys).toArray(new String[0]);
+        for (String key : distinct) {
+            if (hasUnpairedSurrogate(key)) {
+                throw new IllegalArgumentException("key with an unpaired surrogate: " + key);
+            }
+        }
+        for (long seed = 0; seed < MAX_SEEDS; seed++) {
+            PerfectHashSet set = build(distinct, seed);
+            if (set != null) {
+                return set;
+            }
+        }
+        throw new IllegalStateException("no perfect hash found for " + distinct.length + " keys");
+    }
+
+    /**
+     * @return null if a bucket has no pilot with this seed, two keys with the same 64 bits hash for instance
+     */
+    private static PerfectHashSet build(String[] keys, long seed) {
+        int n = keys.length;
+        int buckets = Math.max(1, (n + AVERAGE_BUCKET_SIZE - 1) / AVERAGE_BUCKET_SIZE);
+        long[] hashes = new long[n];
+        // counting sort of the keys by bucket
+        int[] bucketStart = new int[buckets + 1];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(keys[i], seed);
+            bucketStart[bucket(hashes[i], buckets) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] byBucket = new int[n];
+        int[] next = bucketStart.clone();
+        for (int i = 0; i < n; i++) {
+            byBucket[next[bucket(hashes[i], buckets)]++] = i;
+        }
+        // and of the buckets by decreasing size, the big ones are placed while there are many free slots
+        int[] sizeStart = new int[maxBucketSize + 2];
+        for (int b = 0; b < buckets; b++) {
+            sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxBucketSize; s++) {
+            sizeStart[s + 1] += sizeStart[s];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+        }
+
+        // the last buckets look for one of the few free slots left, n tries on average for the very last one
+        int maxPilot = (int) Math.min(Integer.MAX_VALUE, Math.max(1 << 16, 16L * n));
+        long[] taken = new long[(n + 63) >>> 6];
+        int[] pilots = new int[buckets];
+        int[] slotOfKey = new int[n];
+        int[] slots = new int[maxBucketSize];
+        for (int b : order) {
+            int from = bucketStart[b];
+            int size = bucketStart[b + 1] - from;
+            if (size == 0) {
+                break;
+            }
+            int pilot = findPilot(hashes, byBucket, from, size, n, taken, slots, maxPilot);
+            if (pilot < 0) {
+                return null;
+            }
+            pilots[b] = pilot;
+            for (int j = 0; j < size; j++) {
+                taken[slots[j] >>> 6] |= 1L << slots[j];
+                slotOfKey[byBucket[from + j]] = slots[j];
+            }
+        }
+
+        byte[][] encoded = new byte[n][];
+        long bytes = 0;
+        for (int i = 0; i < n; i++) {
+            encoded[slotOfKey[i]] = keys[i].getBytes(StandardCharsets.UTF_8);
+            bytes += encoded[slotOfKey[i]].length;
+        }
+        if (bytes > Integer.MAX_VALUE - 16) {
+            throw new IllegalArgumentException("keys too big for a byte[]: " + bytes + " bytes");
+        }
+        int[] offsets = new int[n + 1];
+        byte[] data = new byte[(int) bytes];
+        for (int slot = 0; slot < n; slot++) {
+            System.arraycopy(encoded[slot], 0, data, offsets[slot], encoded[slot].length);
+            offsets[slot + 1] = offsets[slot] + encoded[slot].length;
+        }
+        return new PerfectHashSet(seed, pilots, offsets, data);
+    }
+
+    /**
+     * @return the first pilot sending all the keys of the bucket to distinct free slots, written to slots, or -1
+     */
+    private static int findPilot(long[] hashes, int[] byBucket, int from, int size, int n, long[] taken, int[] slots, int maxPilot) {
+        search:
+        for (int pilot = 0; pilot < maxPilot; pilot++) {
+            for (int j = 0; j < size; j++) {
+                int slot = slot(hashes[byBucket[from + j]], pilot, n);
+                if ((taken[slot >>> 6] & (1L << slot)) != 0) {
+                    continue search;
+                }
+                for (int k = 0; k < j; k++) {
+                    if (slots[k] == slot) {
+                        continue search;
+                    }
+                }
+                slots[j] = slot;
+            }
+            return pilot;
+        }
+        return -1;
+    }
+
+    static boolean hasUnpairedSurrogate(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < key.length() && Character.isLowSurrogate(key.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the loop of String.hashCode() on 64 bits, xxHash64 reading the chars one by one costs more than the rest of the lookup
+    static long hash(String key, long seed) {
+        int length = key.length();
+        long h = seed ^ length;
+        int i = 0;
+        // 2 chars per multiplication, it is a chain of dependent multiplications
+        for (; i + 1 < length; i += 2) {
+            h = (h + (key.charAt(i) | (long) key.charAt(i + 1) << 16)) * 0x9E3779B97F4A7C15L;
+        }
+        if (i < length) {
+            h = (h + key.charAt(i)) * 0x9E3779B97F4A7C15L;
+        }
+        return mix(h);
+    }
+
+    // the high bits pick the bucket, h * buckets / 2^32 instead of a modulo
+    private static int bucket(long hash, int buckets) {
+        return (int) (((hash >>> 32) * buckets) >>> 32);
+    }
+
+    private static int slot(long hash, int pilot, int n) {
+        return (int) (((mix(hash ^ (pilot * 0x9E3779B97F4A7C15L)) >>> 32) * n) >>> 32);
+    }
+
+    // murmur3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the slot of key in [0, size()), or -1 if it is not in the set
+     */
+    public int index(String key) {
+        int n = size();
+        if (n == 0) {
+            return -1;
+        }
+        long hash = hash(key, seed);
+        int slot = slot(hash, pilots[bucket(hash, pilots.length)], n);
+        return matches(key, offsets[slot], offsets[slot + 1]) ? slot : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && index((String) o) >= 0;
+    }
+
+    public String key(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        }
+        return new String(data, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+    }
+
+    // compares key with its UTF-8 encoding without encoding it, a key with an unpaired surrogate is never in the set
+    private boolean matches(String key, int from, int to) {
+        int length = key.length();
+        if (to - from < length) {
+            return false;
+        }
+        if (to - from == length) {
+            // as many bytes as chars: only an ASCII key can match
+            byte[] data = this.data;
+            for (int i = 0; i < length; i++) {
+                char c = key.charAt(i);
+                if (c >= 0x80 || data[from + i] != c) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int p = from;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                if (p == to || data[p++] != c) {
+                    return false;
+                }
+            } else if (c < 0x800) {
+                if (to - p < 2 || data[p++] != (byte) (0xC0 | c >> 6) || data[p++] != (byte) (0x80 | c & 0x3F)) {
+                    return false;
+                }
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, key.charAt(++i));
+                    if (to - p < 4 || data[p++] != (byte) (0xF0 | cp >> 18) || data[p++] != (byte) (0x80 | cp >> 12 & 0x3F)
+                            || data[p++] != (byte) (0x80 | cp >> 6 & 0x3F) || data[p++] != (byte) (0x80 | cp & 0x3F)) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            } else if (to - p < 3 || data[p++] != (byte) (0xE0 | c >> 12) || data[p++] != (byte) (0x80 | c >> 6 & 0x3F)
+                    || data[p++] != (byte) (0x80 | c & 0x3F)) {
+                return false;
+            }
+        }
+        return p == to;
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public String next() {
+                if (next >= size()) {
+                    throw new NoSuchElementException();
+                }
+                return key(next++);
+            }
+        };
+    }
+
+    /**
+     * Size of the serialized form, also roughly the heap it takes.
+     */
+    public long serializedBytes() {
+        return HEADER_BYTES + (long) Integer.BYTES * (pilots.length + offsets.length) + data.length;
+    }
+
+    public void save(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) serializedBytes());
+        buffer.putInt(MAGIC).putLong(seed).putInt(size()).putInt(pilots.length);
+        buffer.asIntBuffer().put(pilots).put(offsets);
+        buffer.position(buffer.position() + Integer.BYTES * (pilots.length + offsets.length));
+        buffer.put(data);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Nothing is rebuilt, the arrays are read as they were saved.
+     */
+    public static PerfectHashSet load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file too big: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // reads the whole file
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("not a perfect hash file: " + file);
+            }
+            long seed = buffer.getLong();
+            int size = buffer.getInt();
+            int[] pilots = new int[buffer.getInt()];
+            int[] offsets = new int[size + 1];
+            buffer.asIntBuffer().get(pilots).get(offsets);
+            buffer.position(buffer.position() + Integer.BYTES * (pilots.length + offsets.length));
+            byte[] data = new byte[offsets[size]];
+            buffer.get(data);
+            return new PerfectHashSet(seed, pilots, offsets, data);
+        }
+    }
+}
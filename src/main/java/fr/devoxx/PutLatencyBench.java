@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Latency of a single put, where {@link HashMapResize} only gives the average time to fill a map.
+ * <p>
+ * Each invocation is one put, the map is filled from empty up to insertCount and then replaced by an empty one,
+ * so every resize up to insertCount shows up in the percentiles. With insertCount = threshold + 1 the last put
+ * of the cycle triggers the biggest resize, with insertCount = threshold it doesn't.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+public class PutLatencyBench {
+
+    // same values as in HashMapResize
+    @Param({"24576", "24577", "196608", "196609", "3145728", "3145729"})
+    public int insertCount = 0;
+
+    private List<Integer> integers;
+
+    private HashMap<Object, Object> hashMap;
+    private IncrementalResizeHashMap<Object, Object> incrementalMap;
+    private int next;
+
+    @Setup
+    public void prepare_boxed_ints() {
+        integers = new ArrayList<>(insertCount);
+        for (int i = 0; i < insertCount; i++) {
+            integers.add(i);
+        }
+        hashMap = new HashMap<>();
+        incrementalMap = new IncrementalResizeHashMap<>();
+        next = 0;
+    }
+
+    @Benchmark
+    public Object hashmap_put() {
+        if (next == insertCount) {
+            hashMap = new HashMap<>();
+            next = 0;
+        }
+        Integer integer = integers.get(next++);
+        return hashMap.put(integer, integer);
+    }
+
+    @Benchmark
+    public Object incremental_map_put() {
+        if (next == insertCount) {
+            incrementalMap = new IncrementalResizeHashMap<>();
+            next = 0;
+        }
+        Integer integer = integers.get(next++);
+        return incrementalMap.put(integer, integer);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + PutLatencyBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .jvmArgs("-Xmx4g", "-Xms4g")
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        ResultsStore.run(opt);
+    }
+}
@@ -0,0 +1,162 @@
+package fr.devoxx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Compares two runs written by {@link ResultsStore} (or two plain JMH JSON result files) and tells whether the
+ * candidate regressed.
+ * <pre>
+ * java -cp target/benchmarks.jar fr.devoxx.ResultsCompare baseline.json candidate.json [minChange]
+ * </pre>
+ * The benchmarks are matched on name, mode and params. A benchmark regressed when it is worse by more than minChange
+ * (5% by default) and its confidence interval, score &plusmn; scoreError (99.9% with JMH defaults), doesn't overlap
+ * the baseline one. Disjoint intervals is a conservative test: a small regression with noisy runs is reported as
+ * within noise, more forks make the intervals narrower. A single fork single iteration run has no error and is
+ * reported as inconclusive. The exit code is 1 when at least one benchmark regressed, so this can gate a build.
+ */
+public class ResultsCompare {
+
+    static final double DEFAULT_MIN_CHANGE = 0.05;
+
+    enum Verdict {
+        REGRESSION, IMPROVEMENT, WITHIN_NOISE, INCONCLUSIVE, MISSING, NEW
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ResultsCompare baseline.json candidate.json [minChange, default " + DEFAULT_MIN_CHANGE + "]");
+            System.exit(2);
+        }
+        Object baseline = load(args[0]);
+        Object candidate = load(args[1]);
+        double minChange = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_MIN_CHANGE;
+
+        printEnvironmentChanges(baseline, candidate);
+        boolean regressed = compare(ResultsStore.results(baseline), ResultsStore.results(candidate), minChange);
+        System.out.println();
+        System.out.println("Regression: " + (regressed ? "yes" : "no"));
+        System.exit(regressed ? 1 : 0);
+    }
+
+    static Object load(String file) throws IOException {
+        return Json.parse(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true if at least one benchmark regressed
+     */
+    static boolean compare(List<Map<String, Object>> baseline, List<Map<String, Object>> candidate, double minChange) {
+        Map<String, Map<String, Object>> baselineByKey = byKey(baseline);
+        Map<String, Map<String, Object>> candidateByKey = byKey(candidate);
+        Map<String, Map<String, Object>> all = new LinkedHashMap<>(baselineByKey);
+        candidateByKey.forEach(all::putIfAbsent);
+
+        System.out.printf("%-80s %22s %22s %8s  %s%n", "Benchmark", "Baseline", "Candidate", "Change", "Verdict");
+        boolean regressed = false;
+        for (String key : all.keySet()) {
+            Map<String, Object> before = baselineByKey.get(key);
+            Map<String, Object> after = candidateByKey.get(key);
+            Verdict verdict;
+            double change = Double.NaN;
+            double scoreChange = Double.NaN;
+            if (before == null) {
+                verdict = Verdict.NEW;
+            } else if (after == null) {
+                verdict = Verdict.MISSING;
+            } else {
+                boolean higherIsBetter = "thrpt".equals(before.get("mode"));
+                double beforeScore = score(before);
+                double afterScore = score(after);
+                scoreChange = (afterScore - beforeScore) / beforeScore;
+                // > 0 when the candidate is worse
+                change = higherIsBetter ? -scoreChange : scoreChange;
+                verdict = verdict(before, after, change, minChange);
+            }
+            regressed |= verdict == Verdict.REGRESSION;
+            System.out.printf("%-80s %22s %22s %8s  %s%n", key, format(before), format(after),
+                    Double.isNaN(scoreChange) ? "" : String.format("%+.1f%%", 100 * scoreChange), verdict);
+        }
+        return regressed;
+    }
+
+    static Verdict verdict(Map<String, Object> before, Map<String, Object> after, double change, double minChange) {
+        double beforeError = error(before);
+        double afterError = error(after);
+        if (Double.isNaN(beforeError) || Double.isNaN(afterError)) {
+            return Verdict.INCONCLUSIVE;
+        }
+        double beforeScore = score(before);
+        double afterScore = score(after);
+        boolean disjoint = afterScore - afterError > beforeScore + beforeError
+                || afterScore + afterError < beforeScore - beforeError;
+        if (!disjoint || Math.abs(change) <= minChange) {
+            return Verdict.WITHIN_NOISE;
+        }
+        return change > 0 ? Verdict.REGRESSION : Verdict.IMPROVEMENT;
+    }
+
+    // benchmark mode param=value..., params sorted so that the order of the @Params doesn't matter
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> byKey(List<Map<String, Object>> results) {
+        Map<String, Map<String, Object>> byKey = new LinkedHashMap<>();
+        for (Map<String, Object> result : results) {
+            StringBuilder key = new StringBuilder();
+            key.append(result.get("benchmark")).append(' ').append(result.get("mode"));
+            Object params = result.get("params");
+            if (params instanceof Map) {
+                new TreeMap<>((Map<String, Object>) params).forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            }
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> primaryMetric(Map<String, Object> result) {
+        return (Map<String, Object>) result.get("primaryMetric");
+    }
+
+    private static double score(Map<String, Object> result) {
+        return Json.number(primaryMetric(result).get("score"));
+    }
+
+    private static double error(Map<String, Object> result) {
+        return Json.number(primaryMetric(result).get("scoreError"));
+    }
+
+    private static String format(Map<String, Object> result) {
+        if (result == null) {
+            return "-";
+        }
+        return String.format("%.3f +- %.3f", score(result), error(result));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printEnvironmentChanges(Object baseline, Object candidate) {
+        if (!(baseline instanceof Map) || !(candidate instanceof Map)) {
+            return;
+        }
+        Map<String, Object> before = (Map<String, Object>) ((Map<String, Object>) baseline).get("environment");
+        Map<String, Object> after = (Map<String, Object>) ((Map<String, Object>) candidate).get("environment");
+        if (before == null || after == null) {
+            return;
+        }
+        if (!Objects.equals(before.get("fingerprint"), after.get("fingerprint"))) {
+            System.out.println("WARNING: the runs were made on different machines, the scores may not be comparable");
+        }
+        for (String key : before.keySet()) {
+            if (!key.equals("date") && !Objects.equals(before.get(key), after.get(key))) {
+                System.out.println(key + ": " + before.get(key) + " -> " + after.get(key));
+            }
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,185 @@
+package fr.devoxx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.profile.Profiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Optional;
+
+/**
+ * Runs the benchmarks and keeps their results, instead of pasting them in comments.
+ * <p>
+ * Each run writes results/&lt;benchmark&gt;-&lt;date&gt;.json (the directory can be changed with -Dresults.dir):
+ * <pre>
+ * {
+ *     "environment" : { JDK, fork JVM flags, OS, CPU, machine fingerprint... },
+ *     "results" : [ the JMH JSON results, params included ]
+ * }
+ * </pre>
+ * The fingerprint only depends on the hardware and the OS, so that two runs on the same box can be told apart from
+ * runs on another one whatever the JDK. {@link ResultsCompare} compares two of these files.
+ */
+public class ResultsStore {
+
+    static final String RESULTS_DIR_PROPERTY = "results.dir";
+    static final String DEFAULT_RESULTS_DIR = "results";
+
+    public static Collection<RunResult> run(Options options) throws RunnerException {
+        Path dir = Paths.get(System.getProperty(RESULTS_DIR_PROPERTY, DEFAULT_RESULTS_DIR));
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        Path file = dir.resolve(runName(options) + "-" + timestamp + ".json");
+        Path jmhFile = dir.resolve(runName(options) + "-" + timestamp + ".jmh.json");
+        try {
+            Files.createDirectories(dir);
+            Options recorded = new RecordedOptions()
+                    .parent(options)
+                    .result(jmhFile.toString())
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            Collection<RunResult> results = new Runner(recorded).run();
+
+            String jmhResults = new String(Files.readAllBytes(jmhFile), StandardCharsets.UTF_8);
+            // the JMH results are embedded as they are
+            String environment = Json.write(environment(options));
+            String json = "{\n    \"environment\" : " + environment.replace("\n", "\n    ")
+                    + ",\n    \"results\" : " + jmhResults.trim().replace("\n", "\n    ") + "\n}\n";
+            Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+            Files.delete(jmhFile);
+            System.out.println("Results written to " + file);
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The getProfilers() of JMH 1.7 OptionsBuilder appends the profilers of the parent options to its own list at
+     * each call, with parent() every profiler would run several times. The side effect is still there, super
+     * getProfilers() keeps growing the list: this only de-duplicates what it returns, so it relies on that behavior
+     * and has to be revisited with a newer JMH.
+     */
+    private static class RecordedOptions extends OptionsBuilder {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public List<Class<? extends Profiler>> getProfilers() {
+            return new ArrayList<>(new LinkedHashSet<>(super.getProfilers()));
+        }
+    }
+
+    // ".*HashMapResize.*" -> HashMapResize
+    static String runName(Options options) {
+        List<String> includes = options.getIncludes();
+        String name = includes.isEmpty() ? "all" : includes.get(0).replaceAll("[^A-Za-z0-9_]+", "_").replaceAll("^_+|_+$", "");
+        return name.isEmpty() ? "all" : name;
+    }
+
+    static Map<String, Object> environment(Options options) {
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("date", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        environment.put("fingerprint", fingerprint());
+        environment.put("hostname", hostname());
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+        environment.put("cpu", cpuModel());
+        environment.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        environment.put("physicalMemory", physicalMemory());
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("javaVendor", System.getProperty("java.vendor"));
+        environment.put("vmName", System.getProperty("java.vm.name"));
+        environment.put("vmVersion", System.getProperty("java.vm.version"));
+        environment.put("runnerJvmArgs", ManagementFactory.getRuntimeMXBean().getInputArguments());
+        // the forks run with these, on the runner JVM unless forkJvm is set
+        environment.put("forkJvm", orDefault(options.getJvm(), "same as runner"));
+        environment.put("forkJvmArgs", orDefault(options.getJvmArgs(), Collections.<String>emptyList()));
+        environment.put("forkJvmArgsPrepend", orDefault(options.getJvmArgsPrepend(), Collections.<String>emptyList()));
+        environment.put("forkJvmArgsAppend", orDefault(options.getJvmArgsAppend(), Collections.<String>emptyList()));
+        return environment;
+    }
+
+    private static <T> T orDefault(Optional<T> optional, T defaultValue) {
+        return optional.hasValue() ? optional.get() : defaultValue;
+    }
+
+    static String fingerprint() {
+        String machine = System.getProperty("os.name") + "|" + System.getProperty("os.arch") + "|" + cpuModel() + "|"
+                + Runtime.getRuntime().availableProcessors() + "|" + physicalMemory();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(machine.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String cpuModel() {
+        Path cpuInfo = Paths.get("/proc/cpuinfo");
+        if (Files.isReadable(cpuInfo)) {
+            try {
+                for (String line : Files.readAllLines(cpuInfo, StandardCharsets.UTF_8)) {
+                    if (line.startsWith("model name")) {
+                        return line.substring(line.indexOf(':') + 1).trim();
+                    }
+                }
+            } catch (IOException e) {
+                // falls back to the architecture
+            }
+        }
+        String identifier = System.getenv("PROCESSOR_IDENTIFIER");
+        return identifier != null ? identifier : System.getProperty("os.arch");
+    }
+
+    static long physicalMemory() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return -1;
+    }
+
+    static String hostname() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * The JMH results of a file written by {@link #run(Options)}, or of a plain JMH JSON result file.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> results(Object json) {
+        Object results = json instanceof Map ? ((Map<String, Object>) json).get("results") : json;
+        if (!(results instanceof List)) {
+            throw new IllegalArgumentException("not a JMH result file");
+        }
+        return new ArrayList<>((List<Map<String, Object>>) results);
+    }
+}
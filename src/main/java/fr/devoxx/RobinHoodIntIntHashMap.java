@@ -0,0 +1,184 @@
+package fr.devoxx;
+
+import java.util.Arrays;
+
+/**
+ * Same as {@link IntIntOpenHashMap} but with Robin Hood probing: on insert, an entry that is further from its home slot
+ * than the resident one takes its place and the resident moves on. It keeps the probe lengths close to each other, and
+ * lookups for absent keys can stop as soon as they are further than the resident entry.
+ */
+public class RobinHoodIntIntHashMap {
+
+    private static final int FREE_KEY = 0;
+
+    private final float loadFactor;
+    private final int missingValue;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int threshold;
+
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    public RobinHoodIntIntHashMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize number of entries that can be inserted without resizing
+     */
+    public RobinHoodIntIntHashMap(int expectedSize) {
+        this(expectedSize, IntIntOpenHashMap.DEFAULT_LOAD_FACTOR, 0);
+    }
+
+    /**
+     * @param missingValue value returned by get() when the key is absent
+     */
+    public RobinHoodIntIntHashMap(int expectedSize, float loadFactor, int missingValue) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must be positive: " + expectedSize);
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("loadFactor must be in ]0, 1[: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        this.missingValue = missingValue;
+        allocate(IntIntOpenHashMap.capacityFor(expectedSize, loadFactor));
+    }
+
+    /**
+     * Grows the table once so that expectedSize entries fit without any further resize.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = IntIntOpenHashMap.capacityFor(expectedSize, loadFactor);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int i = indexOf(key);
+        return i < 0 ? missingValue : values[i];
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return indexOf(key) >= 0;
+    }
+
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int i = IntIntOpenHashMap.mix(key) & mask;
+        for (int distance = 0; ; distance++, i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            // the key would have evicted this entry if it was present
+            if (k == FREE_KEY || distance(k, i, mask) < distance) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value, or missingValue if there was none
+     */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int previous = hasFreeKey ? freeKeyValue : missingValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            int previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        insert(key, value);
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    // key must be absent
+    private void insert(int key, int value) {
+        int mask = keys.length - 1;
+        int i = IntIntOpenHashMap.mix(key) & mask;
+        for (int distance = 0; ; distance++, i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == FREE_KEY) {
+                keys[i] = key;
+                values[i] = value;
+                return;
+            }
+            int residentDistance = distance(k, i, mask);
+            if (residentDistance < distance) {
+                int v = values[i];
+                keys[i] = key;
+                values[i] = value;
+                key = k;
+                value = v;
+                distance = residentDistance;
+            }
+        }
+    }
+
+    private static int distance(int key, int index, int mask) {
+        return (index - IntIntOpenHashMap.mix(key)) & mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Bytes used by the backing arrays, array headers excluded.
+     */
+    public long tableBytes() {
+        return (long) keys.length * Integer.BYTES * 2;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        threshold = capacity == IntIntOpenHashMap.MAX_CAPACITY ? IntIntOpenHashMap.MAX_CAPACITY - 1 : (int) (capacity * loadFactor);
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > IntIntOpenHashMap.MAX_CAPACITY) {
+            throw new IllegalStateException("map is full: " + size);
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != FREE_KEY) {
+                insert(oldKeys[j], oldValues[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package fr.devoxx;
+
+import java.util.Locale;
+import java.util.function.ToIntFunction;
+
+/**
+ * String hash functions to compare with {@link String#hashCode()}, all computed on the chars without copying them.
+ * <p>
+ * The non-JDK functions hash the UTF-16LE bytes of the String, i.e. what a Java 8 String holds: 2 bytes per char,
+ * read 4 chars at a time as a little endian long. The 64 bits functions are folded to 32 bits with h ^ (h >>> 32).
+ * <p>
+ * There is no Vector API on Java 8, {@link #UNROLLED_POLYNOMIAL} is the closest we get: the same 31^k polynomial as
+ * the JDK, unrolled by 4 so that the multiplications don't depend on each other.
+ */
+public enum StringHash implements ToIntFunction<String> {
+
+    /**
+     * String.hashCode() recomputed on each call, String caches it.
+     */
+    JDK_POLYNOMIAL {
+        @Override
+        public int applyAsInt(String s) {
+            return polynomial(s);
+        }
+    },
+    UNROLLED_POLYNOMIAL {
+        @Override
+        public int applyAsInt(String s) {
+            return unrolledPolynomial(s);
+        }
+    },
+    XXHASH64 {
+        @Override
+        public int applyAsInt(String s) {
+            return fold(xxHash64(s, 0));
+        }
+    },
+    WYHASH {
+        @Override
+        public int applyAsInt(String s) {
+            return fold(wyhash(s, 0));
+        }
+    },
+    MURMUR3 {
+        @Override
+        public int applyAsInt(String s) {
+            return murmur3_32(s, 0);
+        }
+    };
+
+    /**
+     * @param name the enum name, case insensitive, as given in the benchmark params
+     */
+    public static StringHash of(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    static int fold(long h) {
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static int polynomial(String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    static int unrolledPolynomial(String s) {
+        int n = s.length();
+        int h = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            h = 31 * 31 * 31 * 31 * h
+                    + 31 * 31 * 31 * s.charAt(i)
+                    + 31 * 31 * s.charAt(i + 1)
+                    + 31 * s.charAt(i + 2)
+                    + s.charAt(i + 3);
+        }
+        for (; i < n; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    // little endian reads of the UTF-16LE bytes, byte offsets are always even here
+
+    private static long readLong(String s, int byteOffset) {
+        int i = byteOffset >> 1;
+        return (long) s.charAt(i)
+                | (long) s.charAt(i + 1) << 16
+                | (long) s.charAt(i + 2) << 32
+                | (long) s.charAt(i + 3) << 48;
+    }
+
+    private static long readInt(String s, int byteOffset) {
+        int i = byteOffset >> 1;
+        return (s.charAt(i) | (long) s.charAt(i + 1) << 16) & 0xFFFFFFFFL;
+    }
+
+    private static int byteAt(String s, int byteOffset) {
+        char c = s.charAt(byteOffset >> 1);
+        return (byteOffset & 1) == 0 ? c & 0xFF : c >>> 8;
+    }
+
+    private static final long XXH_PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long XXH_PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long XXH_PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long XXH_PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long XXH_PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    static long xxHash64(String s, long seed) {
+        int length = s.length() * 2;
+        int p = 0;
+        long h;
+        if (length >= 32) {
+            long v1 = seed + XXH_PRIME64_1 + XXH_PRIME64_2;
+            long v2 = seed + XXH_PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - XXH_PRIME64_1;
+            for (; p <= length - 32; p += 32) {
+                v1 = xxhRound(v1, readLong(s, p));
+                v2 = xxhRound(v2, readLong(s, p + 8));
+                v3 = xxhRound(v3, readLong(s, p + 16));
+                v4 = xxhRound(v4, readLong(s, p + 24));
+            }
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = xxhMergeRound(h, v1);
+            h = xxhMergeRound(h, v2);
+            h = xxhMergeRound(h, v3);
+            h = xxhMergeRound(h, v4);
+        } else {
+            h = seed + XXH_PRIME64_5;
+        }
+        h += length;
+        for (; p + 8 <= length; p += 8) {
+            h ^= xxhRound(0, readLong(s, p));
+            h = Long.rotateLeft(h, 27) * XXH_PRIME64_1 + XXH_PRIME64_4;
+        }
+        if (p + 4 <= length) {
+            h ^= readInt(s, p) * XXH_PRIME64_1;
+            h = Long.rotateLeft(h, 23) * XXH_PRIME64_2 + XXH_PRIME64_3;
+            p += 4;
+        }
+        for (; p < length; p++) {
+            h ^= byteAt(s, p) * XXH_PRIME64_5;
+            h = Long.rotateLeft(h, 11) * XXH_PRIME64_1;
+        }
+        h ^= h >>> 33;
+        h *= XXH_PRIME64_2;
+        h ^= h >>> 29;
+        h *= XXH_PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long xxhRound(long acc, long lane) {
+        acc += lane * XXH_PRIME64_2;
+        return Long.rotateLeft(acc, 31) * XXH_PRIME64_1;
+    }
+
+    private static long xxhMergeRound(long acc, long v) {
+        acc ^= xxhRound(0, v);
+        return acc * XXH_PRIME64_1 + XXH_PRIME64_4;
+    }
+
+    // the default secret _wyp of wyhash final 4
+    private static final long WY_SECRET_0 = 0x2d358dccaa6c78a5L;
+    private static final long WY_SECRET_1 = 0x8bb84b93962eacc9L;
+    private static final long WY_SECRET_2 = 0x4b33a62ed433d4a3L;
+    private static final long WY_SECRET_3 = 0x4d5a2da51de1aa47L;
+
+    /**
+     * wyhash final 4, same value as the reference wyhash(p, len, seed, _wyp) on the UTF-16LE bytes of s.
+     */
+    static long wyhash(String s, long seed) {
+        int length = s.length() * 2;
+        seed ^= wymix(seed ^ WY_SECRET_0, WY_SECRET_1);
+        long a;
+        long b;
+        if (length <= 16) {
+            if (length >= 4) {
+                int shift = (length >> 3) << 2;
+                a = readInt(s, 0) << 32 | readInt(s, shift);
+                b = readInt(s, length - 4) << 32 | readInt(s, length - 4 - shift);
+            } else if (length > 0) {
+                // a single char
+                a = (long) byteAt(s, 0) << 16 | (long) byteAt(s, length >> 1) << 8 | byteAt(s, length - 1);
+                b = 0;
+            } else {
+                a = 0;
+                b = 0;
+            }
+        } else {
+            int p = 0;
+            int i = length;
+            if (i > 48) {
+                long see1 = seed;
+                long see2 = seed;
+                do {
+                    seed = wymix(readLong(s, p) ^ WY_SECRET_1, readLong(s, p + 8) ^ seed);
+                    see1 = wymix(readLong(s, p + 16) ^ WY_SECRET_2, readLong(s, p + 24) ^ see1);
+                    see2 = wymix(readLong(s, p + 32) ^ WY_SECRET_3, readLong(s, p + 40) ^ see2);
+                    p += 48;
+                    i -= 48;
+                } while (i > 48);
+                seed ^= see1 ^ see2;
+            }
+            while (i > 16) {
+                seed = wymix(readLong(s, p) ^ WY_SECRET_1, readLong(s, p + 8) ^ seed);
+                i -= 16;
+                p += 16;
+            }
+            a = readLong(s, p + i - 16);
+            b = readLong(s, p + i - 8);
+        }
+        a ^= WY_SECRET_1;
+        b ^= seed;
+        // wymum: a, b = low and high halves of the 128 bits product
+        long low = a * b;
+        long high = unsignedMultiplyHigh(a, b);
+        return wymix(low ^ WY_SECRET_0 ^ length, high ^ WY_SECRET_1);
+    }
+
+    private static long wymix(long a, long b) {
+        return a * b ^ unsignedMultiplyHigh(a, b);
+    }
+
+    // Math.multiplyHigh is Java 9+, and signed
+    static long unsignedMultiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long t = x1 * y0 + (x0 * y0 >>> 32);
+        long w1 = x0 * y1 + (t & 0xFFFFFFFFL);
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    private static final int MURMUR3_C1 = 0xcc9e2d51;
+    private static final int MURMUR3_C2 = 0x1b873593;
+
+    /**
+     * MurmurHash3 x86_32, same value as Guava's murmur3_32().hashString(s) on the chars.
+     */
+    static int murmur3_32(String s, int seed) {
+        int n = s.length();
+        int h = seed;
+        int i = 0;
+        for (; i + 1 < n; i += 2) {
+            int k = s.charAt(i) | s.charAt(i + 1) << 16;
+            h ^= murmur3MixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        if (i < n) {
+            h ^= murmur3MixK(s.charAt(i));
+        }
+        h ^= n * 2;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int murmur3MixK(int k) {
+        k *= MURMUR3_C1;
+        k = Integer.rotateLeft(k, 15);
+        return k * MURMUR3_C2;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2014, Oracle America, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of Oracle nor the names of its contributors may be used
+ *    to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package fr.devoxx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * The {@link StringHash} functions against String.hashCode(), on the names alone and on composite keys made of
+ * several names.
+ * <p>
+ * hash_keys only hashes, main() turns its score into ns per hashed byte. hashset_add is the end to end cost: hashing,
+ * plus the collisions the function leaves in the HashMap table.
+ */
+@Warmup(time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(time = 10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringHashBench {
+
+    @Param({"jdk_polynomial", "unrolled_polynomial", "xxhash64", "wyhash", "murmur3"})
+    public String hash;
+
+    /**
+     * Number of names joined in a key, 1 for the names alone
+     */
+    @Param({"1", "4"})
+    public int keyParts = 1;
+
+    /**
+     * 0 for names.txt, or the number of generated keys, see {@link KeyCorpusGenerator}
+     */
+    @Param({"0"})
+    public int corpusSize = 0;
+
+    @Param({KeyCorpus.NO_FILE})
+    public String corpusFile = KeyCorpus.NO_FILE;
+
+    // static so that Person.hashCode() doesn't need a field for it, like HashCodeComplexity.charsToHash
+    static StringHash stringHash = StringHash.JDK_POLYNOMIAL;
+
+    private List<String> keys;
+    private List<Person> persons;
+
+    @Setup
+    public void load_keys() {
+        stringHash = StringHash.of(hash);
+        keys = keys(corpusSize, corpusFile, keyParts);
+        persons = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            persons.add(new Person(key));
+        }
+    }
+
+    /**
+     * Keys made of keyParts consecutive names, separated with '|'.
+     */
+    static List<String> keys(int corpusSize, String corpusFile, int keyParts) {
+        List<String> names = KeyCorpus.load(corpusSize, corpusFile);
+        if (keyParts <= 1) {
+            return names;
+        }
+        List<String> keys = new ArrayList<>(names.size());
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            key.setLength(0);
+            for (int part = 0; part < keyParts; part++) {
+                if (part > 0) {
+                    key.append('|');
+                }
+                key.append(names.get((i + part) % names.size()));
+            }
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public int hash_keys() {
+        StringHash stringHash = StringHashBench.stringHash;
+        int sum = 0;
+        for (String key : keys) {
+            sum += stringHash.applyAsInt(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void hashset_add(Blackhole blackhole) {
+        HashSet<Person> set = new HashSet<>();
+        for (Person person : persons) {
+            set.add(person);
+        }
+        blackhole.consume(set);
+    }
+
+    static class Person {
+
+        private final String name;
+
+        public Person(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Person person = (Person) o;
+            return !(name != null ? !name.equals(person.name) : person.name != null);
+        }
+
+        @Override
+        public int hashCode() {
+            return name == null ? 0 : stringHash.applyAsInt(name);
+        }
+    }
+
+    static long hashedBytes(List<String> keys) {
+        long chars = 0;
+        for (String key : keys) {
+            chars += key.length();
+        }
+        // every function reads the 2 bytes of each char
+        return chars * 2;
+    }
+
+    /**
+     * ns per hashed byte for the hash_keys results, then the collisions of each function over the same keys.
+     */
+    static void printHashReport(Collection<RunResult> results, int corpusSize, String corpusFile, int[] keyParts) {
+        System.out.println(String.format("%-20s %8s %12s %12s", "hash", "keyParts", "us/op", "ns/byte"));
+        for (RunResult result : results) {
+            if (!result.getParams().getBenchmark().endsWith(".hash_keys")) {
+                continue;
+            }
+            int parts = Integer.parseInt(result.getParams().getParam("keyParts"));
+            long bytes = hashedBytes(keys(corpusSize, corpusFile, parts));
+            double score = result.getPrimaryResult().getScore();
+            System.out.println(String.format("%-20s %8d %12.1f %12.3f", result.getParams().getParam("hash"), parts, score, score * 1000 / bytes));
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-20s %8s %10s %14s %12s", "hash", "keyParts", "keys", "32 bits coll.", "cost factor"));
+        for (int parts : keyParts) {
+            List<String> keys = new ArrayList<>(new HashSet<>(keys(corpusSize, corpusFile, parts)));
+            for (StringHash stringHash : StringHash.values()) {
+                Set<Integer> hashes = new HashSet<>();
+                for (String key : keys) {
+                    hashes.add(stringHash.applyAsInt(key));
+                }
+                HashQualityAnalyzer.BucketStats stats = new HashQualityAnalyzer<String>(stringHash::applyAsInt).analyzeResidentTable(keys);
+                System.out.println(String.format("%-20s %8d %10d %14d %12.3f",
+                        stringHash.name().toLowerCase(Locale.ROOT), parts, keys.size(), keys.size() - hashes.size(), stats.costFactor()));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + StringHashBench.class.getSimpleName() + ".*")
+                .shouldDoGC(true)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(10))
+                .measurementTime(TimeValue.seconds(10))
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        Collection<RunResult> results = ResultsStore.run(opt);
+        printHashReport(results, 0, KeyCorpus.NO_FILE, new int[]{1, 4});
+    }
+}
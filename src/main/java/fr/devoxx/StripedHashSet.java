@@ -0,0 +1,132 @@
+package fr.devoxx;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Thread safe set made of a fixed number of {@link HashSet}s, each one guarded by its own lock.
+ * <p>
+ * Elements are dispatched to a stripe with the high bits of their mixed hashCode, so two threads only contend when
+ * they hit the same stripe. With a degenerate hashCode every element goes to the same stripe and it behaves like a
+ * synchronized HashSet.
+ */
+public class StripedHashSet<E> extends AbstractSet<E> {
+
+    static final int DEFAULT_STRIPES = 64;
+
+    private final HashSet<E>[] stripes;
+    private final int shift;
+
+    public StripedHashSet() {
+        this(DEFAULT_STRIPES, 0);
+    }
+
+    /**
+     * @param stripes      number of locks, rounded up to a power of two
+     * @param expectedSize used to pre-size the stripes
+     */
+    @SuppressWarnings("unchecked")
+    public StripedHashSet(int stripes, int expectedSize) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be > 0: " + stripes);
+        }
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+        this.stripes = (HashSet<E>[]) new HashSet<?>[count];
+        this.shift = 32 - Integer.numberOfTrailingZeros(count);
+        int perStripe = (int) (expectedSize / (float) count / 0.75f) + 1;
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new HashSet<>(perStripe);
+        }
+    }
+
+    private HashSet<E> stripeFor(Object o) {
+        if (shift == 32) {
+            return stripes[0];
+        }
+        int h = (o == null ? 0 : o.hashCode()) * 0x9E3779B9;
+        return stripes[h >>> shift];
+    }
+
+    @Override
+    public boolean add(E e) {
+        HashSet<E> stripe = stripeFor(e);
+        synchronized (stripe) {
+            return stripe.add(e);
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        HashSet<E> stripe = stripeFor(o);
+        synchronized (stripe) {
+            return stripe.remove(o);
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        HashSet<E> stripe = stripeFor(o);
+        synchronized (stripe) {
+            return stripe.contains(o);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (HashSet<E> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (HashSet<E> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Iterates over a snapshot taken one stripe at a time, so it is not a consistent view of the whole set.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        for (HashSet<E> stripe : stripes) {
+            synchronized (stripe) {
+                snapshot.addAll(stripe);
+            }
+        }
+        Iterator<E> iterator = snapshot.iterator();
+        return new Iterator<E>() {
+            private E last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return last = iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                StripedHashSet.this.remove(last);
+            }
+        };
+    }
+}